@@ -0,0 +1,342 @@
+/*
+  BenchmarkWorkloads.java
+  -----------------------
+  Copyright (c) 2019 Andrew Trotman and Kat Lilly
+  Minimalistic BM25 search engine.
+*/
+
+import java.io.File;
+import java.util.List;
+import java.util.ArrayList;
+import java.io.PrintStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.ByteBuffer;
+import jassjr.bench.Workload;
+
+/*
+  CLASS BENCHMARKWORKLOADS
+  ------------------------
+  The workloads run by the benchmarks in jassjr.bench (which can't name classes in the default package, see
+  jassjr.bench.Workload)
+*/
+class BenchmarkWorkloads {
+    /*
+      words()
+      -------
+      The words (lower case alpha-numeric tokens) of the documents in the collection
+    */
+    static List<String> words(String root) throws Exception {
+        ByteBuffer text = readText(root);
+        ByteLexer lexer = new ByteLexer();
+        List<String> words = new ArrayList<String>();
+        for (lexer.reset(text, 0, text.limit()); lexer.next(); )
+            if (lexer.token[0] != '<') {
+                lexer.toLowerCase();
+                words.add(lexer.toString());
+            }
+        return words;
+    }
+
+    /*
+      readText()
+      ----------
+      The collection, travel.xml, as UTF-8 bytes
+    */
+    static ByteBuffer readText(String root) throws Exception {
+        return ByteBuffer.wrap(Files.readAllBytes(Paths.get(root, "travel.xml")));
+    }
+
+    /*
+      temporaryDirectory()
+      --------------------
+    */
+    static String temporaryDirectory() throws Exception {
+        return Files.createTempDirectory("jassjr").toString();
+    }
+
+    /*
+      delete()
+      --------
+      Delete the directory and the files in it
+    */
+    static void delete(String directory) {
+        File[] files = new File(directory).listFiles();
+        if (files != null)
+            for (File file : files)
+                file.delete();
+        new File(directory).delete();
+    }
+
+    /*
+      buildIndex()
+      ------------
+      Index the collection into the directory with the given postings format, quietly, return the indexer
+    */
+    static JASSjr_index buildIndex(String root, String collection, String directory, String postingsFormat) throws Exception {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            public void write(int b) {
+            }
+        }));
+        try {
+            JASSjr_index indexer = new JASSjr_index();
+            indexer.directory = directory;
+            indexer.postingsFormat = postingsFormat;
+            indexer.indexFile(collection, 1, new StopWord(new File(root, "stopwords-en.txt").getPath()), new InPlacePorterStemmer());
+            indexer.serialise();
+            return indexer;
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    /*
+      CLASS LEXER
+      -----------
+      ByteLexer.next() over the collection (as the indexer lexes it)
+    */
+    static class Lexer implements Workload {
+        ByteBuffer text;
+        ByteLexer lexer = new ByteLexer();
+
+        public void setUp(String root, String parameter) throws Exception {
+            text = readText(root);
+        }
+
+        public long run() {
+            long tokens = 0;
+            for (lexer.reset(text, 0, text.limit()); lexer.next(); )
+                tokens++;
+            return tokens;
+        }
+
+        public void tearDown() {
+        }
+    }
+
+    /*
+      CLASS STEMMER
+      -------------
+      Stem each word of the collection with PorterStemmer.stemWord() (parameter porter) or
+      InPlacePorterStemmer.stemWord() (parameter inplace)
+    */
+    static class Stemmer implements Workload {
+        List<String> words;
+        PorterStemmer porter;
+        InPlacePorterStemmer inPlace;
+
+        public void setUp(String root, String parameter) throws Exception {
+            words = words(root);
+            if (parameter.equals("porter"))
+                porter = new PorterStemmer();
+            else
+                inPlace = new InPlacePorterStemmer();
+        }
+
+        public long run() {
+            long checksum = 0;
+            if (porter != null)
+                for (String word : words)
+                    checksum += porter.stemWord(word).length();
+            else
+                for (String word : words)
+                    checksum += inPlace.stemWord(word).length();
+            return checksum;
+        }
+
+        public void tearDown() {
+        }
+    }
+
+    /*
+      CLASS STOPWORDS
+      ---------------
+      StopWord.isStopWord() on each word of the collection
+    */
+    static class StopWords implements Workload {
+        List<String> words;
+        StopWord stopWord;
+
+        public void setUp(String root, String parameter) throws Exception {
+            words = words(root);
+            stopWord = new StopWord(new File(root, "stopwords-en.txt").getPath());
+        }
+
+        public long run() {
+            long stopped = 0;
+            for (String word : words)
+                if (stopWord.isStopWord(word))
+                    stopped++;
+            return stopped;
+        }
+
+        public void tearDown() {
+        }
+    }
+
+    /*
+      CLASS SEARCHWORKLOAD
+      --------------------
+      A workload over an index of the collection in the postings format given as the parameter (raw by default)
+    */
+    static abstract class SearchWorkload implements Workload {
+        String directory;
+        JASSjr_search engine;
+
+        public void setUp(String root, String parameter) throws Exception {
+            directory = temporaryDirectory();
+            buildIndex(root, new File(root, "travel.xml").getPath(), directory, parameter.length() == 0 ? IndexWriter.RAW : parameter);
+            engine = new JASSjr_search();
+            engine.directory = directory;
+            engine.stopWord = new StopWord(new File(root, "stopwords-en.txt").getPath());
+            engine.loadIndex(false);
+        }
+
+        /*
+          queries()
+          ---------
+          The terms of TREC topics 51-100 (those in the vocabulary)
+        */
+        List<List<JASSjr_search.VocabEntry>> queries(String root) throws Exception {
+            JASSjr_search.Context context = engine.acquire();
+            List<List<JASSjr_search.VocabEntry>> queries = new ArrayList<List<JASSjr_search.VocabEntry>>();
+            for (String line : Files.readAllLines(Paths.get(root, "51-100.titles.txt"))) {
+                engine.parse(line, context, false);
+                queries.add(new ArrayList<JASSjr_search.VocabEntry>(context.terms));
+            }
+            return queries;
+        }
+
+        public void tearDown() {
+            delete(directory);
+        }
+    }
+
+    /*
+      CLASS DECODE
+      ------------
+      Decode every postings list in the index
+    */
+    static class Decode extends SearchWorkload {
+        IndexReader reader;
+
+        public void setUp(String root, String parameter) throws Exception {
+            super.setUp(root, parameter);
+            reader = new IndexReader(directory);
+        }
+
+        public long run() throws Exception {
+            long checksum = 0;
+            for (IndexReader.Term term : reader.terms)
+                checksum += reader.decodePostings(term).length;
+            return checksum;
+        }
+
+        public void tearDown() {
+            reader.close();
+            super.tearDown();
+        }
+    }
+
+    /*
+      CLASS ACCUMULATE
+      ----------------
+      BM25 accumulation of each of the queries (without finding the top k)
+    */
+    static class Accumulate extends SearchWorkload {
+        List<List<JASSjr_search.VocabEntry>> queries;
+        Accumulators rsv;
+
+        public void setUp(String root, String parameter) throws Exception {
+            super.setUp(root, parameter);
+            queries = queries(root);
+            rsv = new Accumulators((int) engine.documentsInCollection, false);
+        }
+
+        public long run() throws Exception {
+            long touched = 0;
+            for (List<JASSjr_search.VocabEntry> query : queries) {
+                rsv.clear();
+                for (JASSjr_search.VocabEntry term : query)
+                    engine.scoreTerm(term, rsv);
+                touched += rsv.dirtyCount;
+            }
+            return touched;
+        }
+    }
+
+    /*
+      CLASS SELECT
+      ------------
+      Select the top k (the parameter) documents of each of the queries from their accumulators
+    */
+    static class Select implements Workload {
+        Accumulate accumulate = new Accumulate();
+        List<Accumulators> accumulators = new ArrayList<Accumulators>();
+        TopK topK;
+
+        public void setUp(String root, String parameter) throws Exception {
+            accumulate.setUp(root, "");
+            for (List<JASSjr_search.VocabEntry> query : accumulate.queries) {
+                Accumulators rsv = new Accumulators((int) accumulate.engine.documentsInCollection, false);
+                for (JASSjr_search.VocabEntry term : query)
+                    accumulate.engine.scoreTerm(term, rsv);
+                accumulators.add(rsv);
+            }
+            topK = new TopK(Integer.parseInt(parameter));
+        }
+
+        public long run() {
+            long found = 0;
+            for (Accumulators rsv : accumulators)
+                found += topK.select(rsv);
+            return found;
+        }
+
+        public void tearDown() {
+            accumulate.tearDown();
+        }
+    }
+
+    /*
+      CLASS INDEX
+      -----------
+      Build a whole index (on one thread) in a temporary directory.  The parameter is "<collection>:<postings format>"
+      where the collection is travel (travel.xml) or generated (a CorpusGenerator collection of 140,000 short documents,
+      about 16 times the size of travel.xml).
+    */
+    static class Index implements Workload {
+        String root;
+        String collection;
+        String postingsFormat;
+        String directory;
+        String generated;
+
+        public void setUp(String root, String parameter) throws Exception {
+            this.root = root;
+            String[] parts = parameter.split(":");
+            postingsFormat = parts.length > 1 ? parts[1] : IndexWriter.RAW;
+            collection = new File(root, "travel.xml").getPath();
+            if (parts[0].equals("generated")) {
+                generated = temporaryDirectory();
+                collection = new File(generated, "generated.xml").getPath();
+                if (new CorpusGenerator().engage(new String[] {"-documents", "140000", "-length", "12", collection}) != 0)
+                    throw new IllegalStateException("Can't generate " + collection);
+            }
+            directory = temporaryDirectory();
+        }
+
+        public long run() throws Exception {
+            buildIndex(root, collection, directory, postingsFormat);
+            return new File(directory, "postings.bin").length();
+        }
+
+        public void tearDown() {
+            delete(directory);
+            if (generated != null)
+                delete(generated);
+        }
+    }
+}
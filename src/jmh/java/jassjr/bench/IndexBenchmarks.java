@@ -0,0 +1,56 @@
+/*
+  IndexBenchmarks.java
+  --------------------
+  Copyright (c) 2019 Andrew Trotman and Kat Lilly
+  Minimalistic BM25 search engine.
+*/
+
+package jassjr.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+/*
+  CLASS INDEXBENCHMARKS
+  ---------------------
+  The time to build a whole index (on one thread, written to a temporary directory) of travel.xml, and of a larger
+  generated collection (see BenchmarkWorkloads.Index), in each postings format.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IndexBenchmarks {
+    @Param({"travel:raw", "travel:vbyte", "travel:blocked", "travel:quantised", "generated:raw", "generated:quantised"})
+    public String collection;
+
+    Workload instance;
+
+    @Setup
+    public void setUp() throws Exception {
+        instance = Workloads.load("Index:" + collection);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        instance.tearDown();
+    }
+
+    @Benchmark
+    public long build() throws Exception {
+        return instance.run();
+    }
+}
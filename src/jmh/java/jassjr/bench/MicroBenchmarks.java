@@ -0,0 +1,58 @@
+/*
+  MicroBenchmarks.java
+  --------------------
+  Copyright (c) 2019 Andrew Trotman and Kat Lilly
+  Minimalistic BM25 search engine.
+*/
+
+package jassjr.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+/*
+  CLASS MICROBENCHMARKS
+  ---------------------
+  The time of one pass of each of the parts of indexing and searching over travel.xml (or its index):  lexing it
+  (ByteLexer.next()), stemming its words (PorterStemmer.stemWord() and InPlacePorterStemmer.stemWord()),
+  stopping its words (StopWord.isStopWord()), decoding its postings, and, for TREC topics 51-100, BM25 accumulation
+  (JASSjr_search.scoreTerm()) and selecting the top k (TopK.select()).
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MicroBenchmarks {
+    @Param({"Lexer", "Stemmer:porter", "Stemmer:inplace", "StopWords", "Decode:raw", "Decode:vbyte", "Accumulate:raw", "Accumulate:vbyte", "Select:10", "Select:1000"})
+    public String workload;
+
+    Workload instance;
+
+    @Setup
+    public void setUp() throws Exception {
+        instance = Workloads.load(workload);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        instance.tearDown();
+    }
+
+    @Benchmark
+    public long run() throws Exception {
+        return instance.run();
+    }
+}
@@ -0,0 +1,33 @@
+/*
+  RunBenchmarks.java
+  ------------------
+  Copyright (c) 2019 Andrew Trotman and Kat Lilly
+  Minimalistic BM25 search engine.
+*/
+
+package jassjr.bench;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+
+/*
+  CLASS RUNBENCHMARKS
+  -------------------
+  Run the benchmarks (the main class of benchmarks.jar).  The arguments are those of JMH (for example a regular
+  expression for the benchmarks to run, or -p workload=Lexer), but unless told otherwise the results are written as
+  JSON to jmh-result.json so that they can be compared from run to run.
+*/
+public class RunBenchmarks {
+    public static void main(String args[]) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+        if (!commandLine.getResultFormat().hasValue())
+            options.resultFormat(ResultFormatType.JSON);
+        if (!commandLine.getResult().hasValue())
+            options.result("jmh-result.json");
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,38 @@
+/*
+  Workload.java
+  -------------
+  Copyright (c) 2019 Andrew Trotman and Kat Lilly
+  Minimalistic BM25 search engine.
+*/
+
+package jassjr.bench;
+
+/*
+  INTERFACE WORKLOAD
+  ------------------
+  Something to benchmark.  JMH won't generate benchmarks for classes in the default package, and classes in a package
+  can't name those in the default package, so the benchmarks (in this package) run workloads (in the default package,
+  see BenchmarkWorkloads) through this interface.  Each fork runs one workload so the calls are monomorphic.
+*/
+public interface Workload {
+    /*
+      setUp()
+      -------
+      Prepare to run, root is the directory with travel.xml, stopwords-en.txt and 51-100.titles.txt, parameter is the
+      text after the ':' in the workload name (or "")
+    */
+    void setUp(String root, String parameter) throws Exception;
+
+    /*
+      run()
+      -----
+      Do the work once, return something computed from the result (so it can't be optimised away)
+    */
+    long run() throws Exception;
+
+    /*
+      tearDown()
+      ----------
+    */
+    void tearDown() throws Exception;
+}
@@ -0,0 +1,42 @@
+/*
+  Workloads.java
+  --------------
+  Copyright (c) 2019 Andrew Trotman and Kat Lilly
+  Minimalistic BM25 search engine.
+*/
+
+package jassjr.bench;
+
+import java.lang.reflect.Constructor;
+
+/*
+  CLASS WORKLOADS
+  ---------------
+  Make and set up the workloads named by the benchmark parameters, "<name>[:<parameter>]" is the class
+  BenchmarkWorkloads.<name> given the parameter
+*/
+class Workloads {
+    /*
+      root()
+      ------
+      The directory with the collection and queries, -Djassjr.root=<directory> or the working directory
+    */
+    static String root() {
+        return System.getProperty("jassjr.root", System.getProperty("user.dir"));
+    }
+
+    /*
+      load()
+      ------
+      The named workload, set up
+    */
+    static Workload load(String name) throws Exception {
+        int colon = name.indexOf(':');
+        String parameter = colon < 0 ? "" : name.substring(colon + 1);
+        Constructor<?> constructor = Class.forName("BenchmarkWorkloads$" + (colon < 0 ? name : name.substring(0, colon))).getDeclaredConstructor();
+        constructor.setAccessible(true);
+        Workload workload = (Workload) constructor.newInstance();
+        workload.setUp(root(), parameter);
+        return workload;
+    }
+}
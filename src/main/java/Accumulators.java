@@ -0,0 +1,133 @@
+/*
+  Accumulators.java
+  -----------------
+  Copyright (c) 2019 Andrew Trotman and Kat Lilly
+  Minimalistic BM25 search engine.
+*/
+
+import java.util.Arrays;
+
+/*
+  CLASS ACCUMULATORS
+  ------------------
+  The rsv accumulators of a query, one per document, either doubles or (for impact scored indexes) integers.  As in
+  JASSv2, the accumulators are split into pages of about sqrt(N) documents, each with a dirty flag.  A page is
+  zeroed the first time it is written to after clear(), so clearing costs one flag per touched page rather than
+  N writes, and finding the top documents need only look at the touched pages.
+*/
+class Accumulators {
+    int documents;          // the number of accumulators
+    int shift;              // each page holds 2^shift accumulators
+    double[] rsv;           // the accumulators (null if integer)
+    int[] integers;         // the integer accumulators (null if not integer)
+    boolean[] dirty;        // has the page been written to since clear()?
+    int[] dirtyPages;       // dirtyPages[0] .. dirtyPages[dirtyCount - 1] are the dirty pages
+    int dirtyCount;
+
+    /*
+      Accumulators()
+      --------------
+    */
+    Accumulators(int documents, boolean integer) {
+        this.documents = documents;
+        shift = (32 - Integer.numberOfLeadingZeros(documents)) / 2;
+        if (integer)
+            integers = new int[documents];
+        else
+            rsv = new double[documents];
+        int pages = (documents >>> shift) + 1;
+        dirty = new boolean[pages];
+        dirtyPages = new int[pages];
+    }
+
+    /*
+      isInteger()
+      -----------
+    */
+    boolean isInteger() {
+        return integers != null;
+    }
+
+    /*
+      clear()
+      -------
+      Zero all the accumulators (by marking every page clean)
+    */
+    void clear() {
+        for (int which = 0; which < dirtyCount; which++)
+            dirty[dirtyPages[which]] = false;
+        dirtyCount = 0;
+    }
+
+    /*
+      touch()
+      -------
+      Zero the page and mark it dirty
+    */
+    void touch(int page) {
+        int from = page << shift;
+        int to = Math.min(documents, from + (1 << shift));
+        if (integers != null)
+            Arrays.fill(integers, from, to, 0);
+        else
+            Arrays.fill(rsv, from, to, 0);
+        dirty[page] = true;
+        dirtyPages[dirtyCount++] = page;
+    }
+
+    /*
+      add()
+      -----
+      Add value to the accumulator of document d
+    */
+    void add(int d, double value) {
+        if (!dirty[d >>> shift])
+            touch(d >>> shift);
+        rsv[d] += value;
+    }
+
+    /*
+      add()
+      -----
+      Add an integer value (an impact) to the accumulator of document d
+    */
+    void add(int d, int value) {
+        if (!dirty[d >>> shift])
+            touch(d >>> shift);
+        if (integers != null)
+            integers[d] += value;
+        else
+            rsv[d] += value;
+    }
+
+    /*
+      set()
+      -----
+      Set the accumulator of document d
+    */
+    void set(int d, double value) {
+        if (!dirty[d >>> shift])
+            touch(d >>> shift);
+        rsv[d] = value;
+    }
+
+    /*
+      get()
+      -----
+      The accumulator of document d
+    */
+    double get(int d) {
+        if (!dirty[d >>> shift])
+            return 0;
+        return integers != null ? integers[d] : rsv[d];
+    }
+
+    /*
+      value()
+      -------
+      The accumulator of document d, which must be in a dirty page
+    */
+    double value(int d) {
+        return integers != null ? integers[d] : rsv[d];
+    }
+}
@@ -0,0 +1,156 @@
+/*
+  AnalysisPipeline.java
+  ---------------------
+  Copyright (c) 2019 Andrew Trotman and Kat Lilly
+  Minimalistic BM25 search engine.
+*/
+
+import java.util.Map;
+import java.util.List;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.LinkedHashMap;
+
+/*
+  CLASS ANALYSISPIPELINE
+  ----------------------
+  Turn a token into a term: lower case it, drop it if it is a stop word, stem it, and truncate it to the longest
+  term the index holds (see IndexWriter.truncate(), so long terms sharing a prefix are one term).  The same
+  pipeline is used by the indexer and the search engine so that query terms match indexed terms.  The final term
+  for each of the most recently seen tokens is kept in a bounded (least recently used) cache so that a repeated
+  token costs one lookup and no allocation.  A pipeline is not thread safe, use one per thread.
+*/
+class AnalysisPipeline {
+    static final int DEFAULT_CACHE_SIZE = 1 << 16;     // tokens
+    static final String STOP = new String("");          // cached result for a stop word (compared by identity)
+
+    /*
+      CLASS KEY
+      ---------
+      A token, as a slice of a char array, used as the cache key
+    */
+    static class Key {
+        char[] chars;
+        int length;
+        int hash;
+
+        Key set(char[] chars, int length) {
+            this.chars = chars;
+            this.length = length;
+            hash = 0;
+            for (int which = 0; which < length; which++)
+                hash = 31 * hash + chars[which];
+            return this;
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object other) {
+            Key key = (Key) other;
+            if (key.hash != hash || key.length != length)
+                return false;
+            for (int which = 0; which < length; which++)
+                if (key.chars[which] != chars[which])
+                    return false;
+            return true;
+        }
+    }
+
+    StopWord stopWord;
+    InPlacePorterStemmer porterStemmer;
+    LinkedHashMap<Key, String> cache;
+    Key probe = new Key();                  // reused for cache lookups
+    char[] buffer = new char[256];          // scratch space for a token
+    long lookups;
+    long hits;
+
+    /*
+      AnalysisPipeline()
+      ------------------
+    */
+    AnalysisPipeline(StopWord stopWord, InPlacePorterStemmer porterStemmer) {
+        this(stopWord, porterStemmer, DEFAULT_CACHE_SIZE);
+    }
+
+    /*
+      AnalysisPipeline()
+      ------------------
+      A pipeline caching the terms of (at most) cacheSize tokens
+    */
+    AnalysisPipeline(StopWord stopWord, InPlacePorterStemmer porterStemmer, final int cacheSize) {
+        this.stopWord = stopWord;
+        this.porterStemmer = porterStemmer;
+        cache = new LinkedHashMap<Key, String>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<Key, String> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /*
+      analyse()
+      ---------
+      Return the term for the token in token[0] .. token[length - 1], or null if it is a stop word
+    */
+    String analyse(char[] token, int length) {
+        lookups++;
+        String term = cache.get(probe.set(token, length));
+        if (term != null)
+            hits++;
+        else {
+            Key key = new Key().set(Arrays.copyOf(token, length), length);
+
+            String lower = new String(token, 0, length).toLowerCase(Locale.ROOT);       // the same in any locale
+            if (stopWord.isStopWord(lower))
+                term = STOP;
+            else {
+                if (buffer.length < lower.length())
+                    buffer = new char[lower.length()];
+                lower.getChars(0, lower.length(), buffer, 0);
+                term = IndexWriter.truncate(new String(buffer, 0, porterStemmer.stem(buffer, lower.length())));
+            }
+            cache.put(key, term);
+        }
+        return term == STOP ? null : term;
+    }
+
+    /*
+      analyse()
+      ---------
+      Return the term for the token, or null if it is a stop word
+    */
+    String analyse(String token) {
+        if (buffer.length < token.length())
+            buffer = new char[token.length()];
+        token.getChars(0, token.length(), buffer, 0);
+        return analyse(buffer, token.length());
+    }
+
+    /*
+      hitRate()
+      ---------
+      The proportion of tokens whose term came from the cache
+    */
+    double hitRate() {
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /*
+      report()
+      --------
+      Report the cache hit rate of the given pipelines (for instance, one per thread) together
+    */
+    static String report(List<AnalysisPipeline> pipelines) {
+        long lookups = 0;
+        long hits = 0;
+        long cached = 0;
+        for (AnalysisPipeline pipeline : pipelines) {
+            lookups += pipeline.lookups;
+            hits += pipeline.hits;
+            cached += pipeline.cache.size();
+        }
+        return String.format("Analysis cache: %d tokens, %d hits (%.1f%%), %d cached", lookups, hits, lookups == 0 ? 0.0 : hits * 100.0 / lookups, cached);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+  BlockCursor.java
+  ----------------
+  Copyright (c) 2019 Andrew Trotman and Kat Lilly
+  Minimalistic BM25 search engine.
+*/
+
+import java.nio.ByteBuffer;
+
+/*
+  CLASS BLOCKCURSOR
+  -----------------
+  Iterate over a blocked postings list (see IndexWriter.encodeBlocks()) in document order.  The block headers are
+  read up front so that the cursor can move to the block that might hold a document, and report the largest
+  score in that block, without decoding any postings.  A block is only decoded when a posting in it is needed.
+*/
+class BlockCursor {
+    static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+    ByteBuffer list;            // the postings list (native byte order)
+    int postings;               // the number of postings in the list
+    int blocks;                 // the number of blocks in the list
+    float maxScore;             // the largest score of any posting in the list
+    int[] lastDoc;              // the last document in each block
+    int[] blockStart;           // where each block starts in list
+    float[] blockMax;           // the largest score in each block
+
+    int block;                  // the current block (moved by shallowAdvance() as well as by next())
+    int decodedBlock = -1;      // the block held in docs[] and tfs[]
+    int[] docs = new int[IndexWriter.BLOCK_SIZE];
+    int[] tfs = new int[IndexWriter.BLOCK_SIZE];
+    int size;                   // the number of postings in docs[] and tfs[]
+    int current = -1;           // the current posting in docs[] and tfs[]
+    int doc = -1;               // the current document, or NO_MORE_DOCS at the end of the list
+    long decoded;               // the number of postings decoded
+
+    /*
+      BlockCursor()
+      -------------
+      A cursor on the list from position() to limit() of list, before the first posting
+    */
+    BlockCursor(ByteBuffer list) {
+        this.list = list;
+        postings = JASSjr_search.readVByte(list);
+        blocks = JASSjr_search.readVByte(list);
+        maxScore = list.getFloat(list.position());
+        list.position(list.position() + 4);
+
+        lastDoc = new int[blocks];
+        blockStart = new int[blocks];
+        blockMax = new float[blocks];
+        int[] blockLength = new int[blocks];
+        int previous = -1;
+        for (int which = 0; which < blocks; which++) {
+            lastDoc[which] = previous += JASSjr_search.readVByte(list);
+            blockLength[which] = JASSjr_search.readVByte(list);
+            blockMax[which] = list.getFloat(list.position());
+            list.position(list.position() + 4);
+        }
+        int at = list.position();
+        for (int which = 0; which < blocks; which++) {
+            blockStart[which] = at;
+            at += blockLength[which];
+        }
+    }
+
+    /*
+      decode()
+      --------
+      Decode the current block into docs[] and tfs[]
+    */
+    void decode() {
+        list.position(blockStart[block]);
+        int d = block == 0 ? -1 : lastDoc[block - 1];
+        size = Math.min(IndexWriter.BLOCK_SIZE, postings - block * IndexWriter.BLOCK_SIZE);
+        for (int which = 0; which < size; which++) {
+            docs[which] = d += JASSjr_search.readVByte(list);
+            tfs[which] = JASSjr_search.readVByte(list);
+        }
+        decodedBlock = block;
+        current = -1;
+        decoded += size;
+    }
+
+    /*
+      next()
+      ------
+      Move to the next posting, return its document (or NO_MORE_DOCS)
+    */
+    int next() {
+        if (doc == NO_MORE_DOCS)
+            return doc;
+        if (decodedBlock == -1 || current + 1 >= size) {
+            if (decodedBlock != -1)
+                block = decodedBlock + 1;
+            if (block >= blocks)
+                return doc = NO_MORE_DOCS;
+            decode();
+        }
+        return doc = docs[++current];
+    }
+
+    /*
+      shallowAdvance()
+      ----------------
+      Move (without decoding) to the first block that might hold target or a later document, return false if there
+      isn't one.  The current posting does not change.
+    */
+    boolean shallowAdvance(int target) {
+        while (block < blocks && lastDoc[block] < target)
+            block++;
+        return block < blocks;
+    }
+
+    /*
+      currentBlockMax()
+      -----------------
+      The largest score in the block found by shallowAdvance()
+    */
+    float currentBlockMax() {
+        return block < blocks ? blockMax[block] : 0;
+    }
+
+    /*
+      advance()
+      ---------
+      Move to the first posting at or after target, return its document (or NO_MORE_DOCS)
+    */
+    int advance(int target) {
+        if (doc >= target)
+            return doc;
+        if (!shallowAdvance(target))
+            return doc = NO_MORE_DOCS;
+        if (block != decodedBlock)
+            decode();
+        while (docs[++current] < target)
+            ;       // the block's last document is at least target
+        return doc = docs[current];
+    }
+
+    /*
+      tf()
+      ----
+      The term frequency of the current posting
+    */
+    int tf() {
+        return tfs[current];
+    }
+}
@@ -0,0 +1,126 @@
+/*
+  BlockMaxBenchmark.java
+  ----------------------
+  Copyright (c) 2019 Andrew Trotman and Kat Lilly
+  Minimalistic BM25 search engine.
+*/
+
+import java.util.List;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/*
+  CLASS BLOCKMAXBENCHMARK
+  -----------------------
+  Compare block-max (MaxScore) pruning to exhaustive evaluation on a blocked index (JASSjr_index -postings blocked)
+  in the current directory:  check that every query gets exactly the same results (documents and scores), and
+  report the postings that pruning skipped and the latency of each.  For example:
+    java BlockMaxBenchmark 51-100.titles.txt
+*/
+class BlockMaxBenchmark {
+    /*
+      run()
+      -----
+      Run each query, return the time each took (in nanoseconds) and put the results (document, score pairs) in
+      results[]
+    */
+    static long[] run(JASSjr_search engine, JASSjr_search.Context context, List<List<JASSjr_search.VocabEntry>> queries, double[][] results) throws Exception {
+        long[] times = new long[queries.size()];
+        for (int query = 0; query < queries.size(); query++) {
+            long start = System.nanoTime();
+            int found = engine.search(queries.get(query), context);
+            times[query] = System.nanoTime() - start;
+
+            results[query] = new double[found * 2];
+            for (int which = 0; which < found; which++) {
+                results[query][which * 2] = context.topK.results()[which];
+                results[query][which * 2 + 1] = context.rsv.get(context.topK.results()[which]);
+            }
+        }
+        return times;
+    }
+
+    /*
+      report()
+      --------
+      Print the mean and median of the times (in nanoseconds), return the mean in milliseconds
+    */
+    static double report(String name, long[] times) {
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        double mean = 0;
+        for (long time : sorted)
+            mean += time;
+        mean /= sorted.length * 1e6;
+        System.out.printf("%-10s mean %8.3f ms  median %8.3f ms%n", name, mean, sorted[sorted.length / 2] / 1e6);
+        return mean;
+    }
+
+    /*
+      main()
+      ------
+    */
+    public static void main(String args[]) throws Exception {
+        int k = 10;
+        int rounds = 5;
+        if (args.length == 3 && args[1].matches("[0-9]+") && args[2].matches("[0-9]+")) {
+            k = Integer.parseInt(args[1]);
+            rounds = Integer.parseInt(args[2]);
+        } else if (args.length != 1) {
+            System.out.println("Usage: java BlockMaxBenchmark <queries> [<k> <rounds>]");
+            System.exit(0);
+        }
+
+        JASSjr_search engine = new JASSjr_search();
+        engine.k = k;
+        engine.loadIndex(false);
+        if (!engine.blocked) {
+            System.out.println("The index in the current directory is not blocked (use JASSjr_index -postings blocked)");
+            System.exit(1);
+        }
+
+		/*
+		  Parse the queries as JASSjr_search does (a leading number is the query id)
+		*/
+        JASSjr_search.Context context = engine.acquire();
+        List<List<JASSjr_search.VocabEntry>> queries = new ArrayList<List<JASSjr_search.VocabEntry>>();
+        for (String line : Files.readAllLines(Paths.get(args[0]))) {
+            engine.parse(line, context, false);
+            queries.add(new ArrayList<JASSjr_search.VocabEntry>(context.terms));
+        }
+
+		/*
+		  Alternate exhaustive and pruned rounds (the first is warm-up), checking the results each time
+		*/
+        double[][] expected = new double[queries.size()][];
+        double[][] actual = new double[queries.size()][];
+        long[] exhaustiveTimes = new long[0];
+        long[] prunedTimes = new long[0];
+        int differences = 0;
+        for (int round = 0; round <= rounds; round++) {
+            engine.exhaustive = true;
+            long[] exhaustive = run(engine, context, queries, expected);
+            engine.exhaustive = false;
+            context.postingsInLists = context.postingsDecoded = 0;
+            long[] pruned = run(engine, context, queries, actual);
+            for (int query = 0; query < queries.size(); query++)
+                if (!Arrays.equals(expected[query], actual[query]))
+                    differences++;
+            if (round != 0) {
+                exhaustiveTimes = Arrays.copyOf(exhaustiveTimes, exhaustiveTimes.length + exhaustive.length);
+                System.arraycopy(exhaustive, 0, exhaustiveTimes, exhaustiveTimes.length - exhaustive.length, exhaustive.length);
+                prunedTimes = Arrays.copyOf(prunedTimes, prunedTimes.length + pruned.length);
+                System.arraycopy(pruned, 0, prunedTimes, prunedTimes.length - pruned.length, pruned.length);
+            }
+        }
+
+        System.out.println(queries.size() + " queries, top " + k + ", " + rounds + " rounds");
+        System.out.printf("postings %d, decoded %d, skipped %.1f%%%n", context.postingsInLists, context.postingsDecoded, context.postingsInLists == 0 ? 0.0 : 100.0 * (context.postingsInLists - context.postingsDecoded) / context.postingsInLists);
+        double exhaustiveMean = report("exhaustive", exhaustiveTimes);
+        double prunedMean = report("block-max", prunedTimes);
+        System.out.printf("speedup %.2fx%n", exhaustiveMean / prunedMean);
+        System.out.println(differences == 0 ? "results identical" : differences + " queries with different results");
+    }
+}
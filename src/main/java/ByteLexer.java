@@ -0,0 +1,214 @@
+/*
+  ByteLexer.java
+  --------------
+  Copyright (c) 2019 Andrew Trotman and Kat Lilly
+  Minimalistic BM25 search engine.
+*/
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.nio.ByteBuffer;
+
+/*
+  CLASS BYTELEXER
+  ---------------
+  One-character lookahead lexical analyser over UTF-8 bytes (typically a memory mapped input file).  A token is
+  an XML tag '<'..'>' (which ends at the end of a line), or a sequence of alpha-numerics (which may contain
+  hyphens).  Each token is decoded into the reusable
+  token[] buffer, so finding a token does not allocate.
+*/
+class ByteLexer {
+    ByteBuffer input;
+    int current;                    // the position of the next unread byte
+    int end;                        // stop at this position
+    int width;                      // the number of bytes in the character decoded by decode()
+
+    char[] token = new char[256];   // the current token is token[0] .. token[length - 1]
+    int length;
+    boolean ascii;                  // is the current token all ASCII?
+
+    /*
+      reset()
+      -------
+      Start the lexical analysis of input from position from up to (but not including) position to
+    */
+    void reset(ByteBuffer input, int from, int to) {
+        this.input = input;
+        current = from;
+        end = to;
+        length = 0;
+    }
+
+    /*
+      isAlphaNumeric()
+      ----------------
+    */
+    static boolean isAlphaNumeric(int character) {
+        return character < 0x80 ? (character >= 'a' && character <= 'z') || (character >= 'A' && character <= 'Z') || (character >= '0' && character <= '9') : character <= 0xFFFF && Character.isLetterOrDigit(character);
+    }
+
+    /*
+      decode()
+      --------
+      Decode the UTF-8 character at position at, set width to its length in bytes.  Malformed bytes decode as
+      U+FFFD (which is punctuation) one byte at a time.
+    */
+    int decode(int at) {
+        int first = input.get(at) & 0xFF;
+        width = 1;
+        if (first < 0x80)
+            return first;
+
+        int extra = first >= 0xF0 ? 3 : first >= 0xE0 ? 2 : first >= 0xC0 ? 1 : 0;
+        if (extra == 0 || at + extra >= end)
+            return 0xFFFD;
+        int character = first & (0x3F >> extra);
+        for (int which = 1; which <= extra; which++) {
+            int next = input.get(at + which) & 0xFF;
+            if ((next & 0xC0) != 0x80)
+                return 0xFFFD;
+            character = (character << 6) | (next & 0x3F);
+        }
+        width = extra + 1;
+        return character;
+    }
+
+    /*
+      append()
+      --------
+      Add the character to the end of the current token
+    */
+    void append(int character) {
+        if (length + 2 > token.length)
+            token = Arrays.copyOf(token, token.length * 2);
+        if (character < 0x80)
+            token[length++] = (char) character;
+        else {
+            ascii = false;
+            length += Character.toChars(character, token, length);
+        }
+    }
+
+    /*
+      next()
+      ------
+      Move on to the next token, return false at the end of the input
+    */
+    boolean next() {
+        int character = 0;
+
+		/*
+		  Skip over whitespace and punctuation (but not XML tags)
+		*/
+        for (; current < end; current += width) {
+            character = decode(current);
+            if (character == '<' || isAlphaNumeric(character))
+                break;
+        }
+        if (current >= end)
+            return false;
+
+		/*
+		  A token is either an XML tag '<'..'>' or a sequence of alpha-numerics.
+		*/
+        length = 0;
+        ascii = true;
+        if (character == '<') {
+            do {
+                append(character);
+                current += width;
+            } while (character != '>' && current < end && (character = decode(current)) != '\n' && character != '\r');
+        } else {
+            do {
+                append(character);
+                current += width;
+            } while (current < end && ((character = decode(current)) == '-' || isAlphaNumeric(character)));     // TREC <DOCNO> primary keys have a hyphen in them
+        }
+        return true;
+    }
+
+    /*
+      is()
+      ----
+      Is the current token the given string?
+    */
+    boolean is(String what) {
+        if (length != what.length())
+            return false;
+        for (int which = 0; which < length; which++)
+            if (token[which] != what.charAt(which))
+                return false;
+        return true;
+    }
+
+    /*
+      toLowerCase()
+      -------------
+      Lower case the current token.  ASCII is done in place, anything else is done as Java does it for a String (in
+      Locale.ROOT, as ASCII is, so the index doesn't depend on the locale it was built in).
+    */
+    void toLowerCase() {
+        if (ascii) {
+            for (int which = 0; which < length; which++)
+                if (token[which] >= 'A' && token[which] <= 'Z')
+                    token[which] += 'a' - 'A';
+        } else {
+            String lower = toString().toLowerCase(Locale.ROOT);
+            if (lower.length() > token.length)
+                token = new char[lower.length() * 2];
+            lower.getChars(0, lower.length(), token, 0);
+            length = lower.length();
+        }
+    }
+
+    /*
+      toString()
+      ----------
+      The current token as a String
+    */
+    public String toString() {
+        return new String(token, 0, length);
+    }
+
+    /*
+      startsDocument()
+      ----------------
+      Is the first token in the line starting at position at (and before to) a <DOC> tag?  Used to find safe
+      places to split the input.
+    */
+    static boolean startsDocument(ByteBuffer input, int at, int to) {
+        while (at < to && input.get(at) != '<' && input.get(at) != '\n' && input.get(at) >= 0 && !isAlphaNumeric(input.get(at)))
+            at++;
+        if (at + 5 > to)
+            return false;
+        for (int which = 0; which < 5; which++)
+            if (input.get(at + which) != "<DOC>".charAt(which))
+                return false;
+        return true;
+    }
+
+    /*
+      nextDocument()
+      --------------
+      The position of the first line at or after from (and before to) that starts with a <DOC> tag, or to if there
+      isn't one.
+    */
+    static int nextDocument(ByteBuffer input, int from, int to) {
+        for (int at = Math.max(from, 1); at < to; at++)
+            if (input.get(at - 1) == '\n' && startsDocument(input, at, to))
+                return at;
+        return to;
+    }
+
+    /*
+      lastDocument()
+      --------------
+      The position of the last line after from (and before to) that starts with a <DOC> tag, or to if there isn't one.
+    */
+    static int lastDocument(ByteBuffer input, int from, int to) {
+        for (int at = to - 1; at > from; at--)
+            if (input.get(at - 1) == '\n' && startsDocument(input, at, to))
+                return at;
+        return to;
+    }
+}
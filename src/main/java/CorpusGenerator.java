@@ -0,0 +1,301 @@
+/*
+  CorpusGenerator.java
+  --------------------
+  Copyright (c) 2019 Andrew Trotman and Kat Lilly
+  Minimalistic BM25 search engine.
+*/
+
+import java.io.File;
+import java.util.Arrays;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.FileOutputStream;
+import java.util.SplittableRandom;
+import java.io.BufferedOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/*
+  CLASS CORPUSGENERATOR
+  ---------------------
+  Generate a synthetic TREC collection (<DOC>, <DOCNO>, <TEXT>) of any size, and a query log to search it with,
+  for testing how the indexer and search engine scale.  For example, a million documents and 100,000 queries:
+    java CorpusGenerator -documents 1000000 -queries 100000 synthetic.xml synthetic.queries.txt
+  The words of the documents are drawn from a Zipfian distribution (the word of rank r has probability
+  proportional to 1 / r^s) over a vocabulary of made up words (the more common the word, the shorter it is, and the
+  most common include stop words such as "be" and "to"), document lengths are log-normal, and a word may repeat
+  one already in the document (as words in real documents are bursty).  Queries are 1 to 4 words, drawn from the
+  same distribution less its most common words, and are themselves drawn from a Zipfian distribution over a pool
+  of distinct queries, so a few queries repeat often and most are seen once or not at all.  The same seed always
+  generates the same files, and both are written as they are generated, so the generator needs little memory
+  however large the collection.
+*/
+class CorpusGenerator {
+    static final byte[] CONSONANTS = "bcdfghjklmnprstvwz".getBytes(StandardCharsets.US_ASCII);
+    static final byte[] VOWELS = "aeiou".getBytes(StandardCharsets.US_ASCII);
+    static final int SYLLABLES = CONSONANTS.length * VOWELS.length;
+    static final int CACHED_WORDS = 1 << 16;        // the words of these ranks are kept rather than remade
+    static final int QUERY_SKIP = 50;               // the most common words aren't used in queries
+    static final double[] QUERY_LENGTHS = {0.30, 0.65, 0.85, 1.0};    // cumulative probability of 1 .. 4 words
+
+    long documents = 10000;
+    long vocabulary;                    // distinct words (0 for as Heaps' law predicts for the collection)
+    double zipf = 1.0;                  // the exponent of the word distribution
+    double meanLength = 300;            // mean words per document
+    double sigma = 0.9;                 // of the log of the document length
+    double burst = 0.2;                 // the probability that a word repeats one already in the document
+    long queries;
+    long distinctQueries;               // the size of the pool of queries (0 for as many as queries)
+    double queryZipf = 0.9;             // the exponent of the query distribution
+    long seed = 1;
+
+    byte[][] words = new byte[CACHED_WORDS][];
+    byte[] word = new byte[32];
+
+    /*
+      CLASS ZIPF
+      ----------
+      Sample a Zipfian distribution over 1 .. n with exponent s (> 0) in constant time and space, by rejection-
+      inversion (W. Hormann and G. Derflinger, Rejection-inversion to generate variates from monotone discrete
+      distributions, ACM TOMACS 6(3), 1996).
+    */
+    static class Zipf {
+        long n;
+        double s;
+        double hIntegralX1;
+        double hIntegralN;
+        double threshold;
+
+        Zipf(long n, double s) {
+            this.n = n;
+            this.s = s;
+            hIntegralX1 = hIntegral(1.5) - 1;
+            hIntegralN = hIntegral(n + 0.5);
+            threshold = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+        }
+
+        /*
+          sample()
+          --------
+        */
+        long sample(SplittableRandom random) {
+            while (true) {
+                double u = hIntegralN + random.nextDouble() * (hIntegralX1 - hIntegralN);
+                double x = hIntegralInverse(u);
+                long k = Math.max(1, Math.min(n, (long) (x + 0.5)));
+                if (k - x <= threshold || u >= hIntegral(k + 0.5) - h(k))
+                    return k;
+            }
+        }
+
+        double h(double x) {
+            return Math.exp(-s * Math.log(x));
+        }
+
+        double hIntegral(double x) {
+            double logX = Math.log(x);
+            return helper2((1 - s) * logX) * logX;
+        }
+
+        double hIntegralInverse(double x) {
+            double t = Math.max(-1, x * (1 - s));
+            return Math.exp(helper1(t) * x);
+        }
+
+        /*
+          helper1() and helper2()
+          -----------------------
+          log(1 + x) / x and (exp(x) - 1) / x, accurate near 0
+        */
+        static double helper1(double x) {
+            return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1 - x * (0.5 - x * (1.0 / 3 - 0.25 * x));
+        }
+
+        static double helper2(double x) {
+            return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1 + x * 0.5 * (1 + x / 3 * (1 + 0.25 * x));
+        }
+    }
+
+    /*
+      spell()
+      -------
+      Write the word of the given rank (from 1) into into[], return its length.  The rank is written in bijective
+      base SYLLABLES with a consonant-vowel syllable as each digit, so every rank has a different word and the
+      more common words are shorter.
+    */
+    static int spell(long rank, byte[] into) {
+        int length = 0;
+        for (long value = rank; value > 0; value = (value - 1) / SYLLABLES) {
+            int syllable = (int) ((value - 1) % SYLLABLES);
+            into[length++] = CONSONANTS[syllable / VOWELS.length];
+            into[length++] = VOWELS[syllable % VOWELS.length];
+        }
+        return length;
+    }
+
+    /*
+      write()
+      -------
+      Write the word of the given rank
+    */
+    void write(OutputStream out, long rank) throws IOException {
+        if (rank < CACHED_WORDS) {
+            if (words[(int) rank] == null) {
+                int length = spell(rank, word);
+                words[(int) rank] = Arrays.copyOf(word, length);
+            }
+            out.write(words[(int) rank]);
+        } else
+            out.write(word, 0, spell(rank, word));
+    }
+
+    /*
+      gaussian()
+      ----------
+      A standard normal variate (Marsaglia's polar method)
+    */
+    static double gaussian(SplittableRandom random) {
+        double x, y, r;
+        do {
+            x = 2 * random.nextDouble() - 1;
+            y = 2 * random.nextDouble() - 1;
+            r = x * x + y * y;
+        } while (r >= 1 || r == 0);
+        return x * Math.sqrt(-2 * Math.log(r) / r);
+    }
+
+    /*
+      writeCollection()
+      -----------------
+      Write the documents, return the number of words written
+    */
+    long writeCollection(String filename, Zipf words) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        double mu = Math.log(meanLength) - sigma * sigma / 2;       // so that the mean length is meanLength
+        long[] document = new long[1024];
+        long written = 0;
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(filename), 1 << 16);
+        try {
+            for (long docId = 1; docId <= documents; docId++) {
+                int length = (int) Math.max(1, Math.min(1 << 20, Math.round(Math.exp(mu + sigma * gaussian(random)))));
+                if (document.length < length)
+                    document = new long[Math.max(length, document.length * 2)];
+                out.write(String.format("<DOC>\n<DOCNO> SYN-%08d </DOCNO>\n<TEXT>\n", docId).getBytes(StandardCharsets.US_ASCII));
+                for (int which = 0; which < length; which++) {
+                    document[which] = which > 0 && random.nextDouble() < burst ? document[random.nextInt(which)] : words.sample(random);
+                    if (which != 0)
+                        out.write(which % 16 == 0 ? '\n' : ' ');
+                    write(out, document[which]);
+                }
+                out.write("\n</TEXT>\n</DOC>\n".getBytes(StandardCharsets.US_ASCII));
+                written += length;
+            }
+        } finally {
+            out.close();
+        }
+        return written;
+    }
+
+    /*
+      writeQueries()
+      --------------
+      Write the query log, one query per line, numbered from 1
+    */
+    void writeQueries(String filename, Zipf words) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed + 1);
+        Zipf pool = new Zipf(distinctQueries == 0 ? queries : distinctQueries, queryZipf);
+        Zipf queryWords = new Zipf(words.n - QUERY_SKIP, words.s);
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(filename), 1 << 16);
+        try {
+            for (long queryId = 1; queryId <= queries; queryId++) {
+				/*
+				  The words of a query depend only on its rank in the pool, so repeats of it are the same
+				*/
+                SplittableRandom query = new SplittableRandom(seed ^ (pool.sample(random) * 0x9E3779B97F4A7C15L));
+                double chance = query.nextDouble();
+                int length = 1;
+                while (chance > QUERY_LENGTHS[length - 1])
+                    length++;
+                out.write(Long.toString(queryId).getBytes(StandardCharsets.US_ASCII));
+                for (int which = 0; which < length; which++) {
+                    out.write(' ');
+                    write(out, QUERY_SKIP + queryWords.sample(query));
+                }
+                out.write('\n');
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /*
+      engage()
+      --------
+    */
+    int engage(String args[]) throws Exception {
+        int arg = 0;
+        try {
+            for (; arg < args.length - 1 && args[arg].startsWith("-"); arg += 2)
+                if (args[arg].equals("-documents"))
+                    documents = Long.parseLong(args[arg + 1]);
+                else if (args[arg].equals("-vocabulary"))
+                    vocabulary = Long.parseLong(args[arg + 1]);
+                else if (args[arg].equals("-zipf"))
+                    zipf = Double.parseDouble(args[arg + 1]);
+                else if (args[arg].equals("-length"))
+                    meanLength = Double.parseDouble(args[arg + 1]);
+                else if (args[arg].equals("-sigma"))
+                    sigma = Double.parseDouble(args[arg + 1]);
+                else if (args[arg].equals("-burst"))
+                    burst = Double.parseDouble(args[arg + 1]);
+                else if (args[arg].equals("-queries"))
+                    queries = Long.parseLong(args[arg + 1]);
+                else if (args[arg].equals("-distinct"))
+                    distinctQueries = Long.parseLong(args[arg + 1]);
+                else if (args[arg].equals("-queryzipf"))
+                    queryZipf = Double.parseDouble(args[arg + 1]);
+                else if (args[arg].equals("-seed"))
+                    seed = Long.parseLong(args[arg + 1]);
+                else
+                    return usage();
+        } catch (NumberFormatException e) {
+            return usage();
+        }
+        int files = args.length - arg;
+        if (files < 1 || files > 2 || (queries > 0) != (files == 2) || documents < 1 || vocabulary < 0 || (vocabulary != 0 && vocabulary <= QUERY_SKIP) || zipf <= 0 || meanLength < 1 || sigma < 0 || burst < 0 || burst >= 1 || distinctQueries < 0 || queryZipf <= 0)
+            return usage();
+
+		/*
+		  By default the vocabulary is as large as Heaps' law (with typical parameters for English) predicts for
+		  the number of words in the collection
+		*/
+        if (vocabulary == 0)
+            vocabulary = Math.max(1000, (long) (44 * Math.pow(documents * meanLength, 0.49)));
+        Zipf words = new Zipf(vocabulary, zipf);
+
+        long written = writeCollection(args[arg], words);
+        System.out.printf("Wrote %d documents (%d words, %.1f MB) from a vocabulary of %d to %s%n", documents, written, new File(args[arg]).length() / (1024.0 * 1024), vocabulary, args[arg]);
+        if (queries > 0) {
+            writeQueries(args[arg + 1], words);
+            System.out.printf("Wrote %d queries (from a pool of %d) to %s%n", queries, distinctQueries == 0 ? queries : distinctQueries, args[arg + 1]);
+        }
+        return 0;
+    }
+
+    /*
+      usage()
+      -------
+    */
+    static int usage() {
+        System.out.println("Usage: java CorpusGenerator [-documents <n>] [-vocabulary <n>] [-zipf <s>] [-length <mean words>] [-sigma <s>] [-burst <p>] [-seed <n>]");
+        System.out.println("                            [-queries <n> [-distinct <n>] [-queryzipf <s>]] <collection.xml> [<queries.txt>]");
+        return 2;
+    }
+
+    /*
+      main()
+      ------
+    */
+    public static void main(String args[]) throws Exception {
+        System.exit(new CorpusGenerator().engage(args));
+    }
+}
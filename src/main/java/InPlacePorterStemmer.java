@@ -0,0 +1,348 @@
+/**
+ * The same stemmer as {@link PorterStemmer}, but working in place on a char buffer.  The measure of a stem is
+ * counted from the letters in the buffer rather than from a String of letter types, so stemming does not allocate.
+ * There is no state so one instance can be shared between threads.
+ */
+public class InPlacePorterStemmer {
+
+    private static final String[] STEP_TWO_SUFFIXES = new String[]{
+            "ational",
+            "tional",
+            "enci",
+            "anci",
+            "izer",
+            "bli", // the published algorithm specifies abli instead of bli.
+            "alli",
+            "entli",
+            "eli",
+            "ousli",
+            "ization",
+            "ation",
+            "ator",
+            "alism",
+            "iveness",
+            "fulness",
+            "ousness",
+            "aliti",
+            "iviti",
+            "biliti",
+            "logi", // the published algorithm doesn't contain this
+    };
+    private static final String[] STEP_TWO_REPLACEMENTS = new String[]{
+            "ate",
+            "tion",
+            "ence",
+            "ance",
+            "ize",
+            "ble", // the published algorithm specifies able instead of ble
+            "al",
+            "ent",
+            "e",
+            "ous",
+            "ize",
+            "ate",
+            "ate",
+            "al",
+            "ive",
+            "ful",
+            "ous",
+            "al",
+            "ive",
+            "ble",
+            "log" // the published algorithm doesn't contain this
+    };
+    private static final String[] STEP_THREE_SUFFIXES = new String[]{
+            "icate",
+            "ative",
+            "alize",
+            "iciti",
+            "ical",
+            "ful",
+            "ness",
+    };
+    private static final String[] STEP_THREE_REPLACEMENTS = new String[]{
+            "ic",
+            "",
+            "al",
+            "ic",
+            "ic",
+            "",
+            "",
+    };
+    private static final String[] STEP_FOUR_SUFFIXES = new String[]{
+            "al",
+            "ance",
+            "ence",
+            "er",
+            "ic",
+            "able",
+            "ible",
+            "ant",
+            "ement",
+            "ment",
+            "ent",
+            "ion",
+            "ou",
+            "ism",
+            "ate",
+            "iti",
+            "ous",
+            "ive",
+            "ize",
+    };
+
+    /**
+     * @param word the word to stem
+     * @return the stem of the word, in lowercase.
+     */
+    public String stemWord(String word) {
+        char[] buffer = word.toCharArray();
+        return new String(buffer, 0, stem(buffer, buffer.length));
+    }
+
+    /**
+     * Stem the word in word[0] .. word[length - 1] in place.  The stem is never longer than the word.
+     *
+     * @param word   the buffer holding the word
+     * @param length the length of the word
+     * @return the length of the stem, in lowercase, in word[]
+     */
+    public int stem(char[] word, int length) {
+        for (int i = 0; i < length; i++) {
+            word[i] = Character.toLowerCase(word[i]);
+        }
+        if (length < 3) return length;
+        length = stemGroupOneA(word, length);
+        length = stemGroupOneB(word, length);
+        length = stemGroupOneC(word, length);
+        length = stemGroupTwo(word, length);
+        length = stemGroupThree(word, length);
+        length = stemGroupFour(word, length);
+        length = stemGroupFiveA(word, length);
+        length = stemGroupFiveB(word, length);
+        return length;
+    }
+
+    private int stemGroupOneA(char[] word, int length) {
+        // Fix SSES -> SS
+        if (endsWith(word, length, "sses")) {
+            return length - 2;
+        }
+        // Fix IES -> I
+        if (endsWith(word, length, "ies")) {
+            return length - 2;
+        }
+        // Fix SS -> SS
+        if (endsWith(word, length, "ss")) {
+            return length;
+        }
+        // Fix S
+        if (endsWith(word, length, "s")) {
+            return length - 1;
+        }
+        return length;
+    }
+
+    private int stemGroupOneB(char[] word, int length) {
+        // Fix (m>0) EED -> EE
+        if (endsWith(word, length, "eed")) {
+            if (getM(word, length - 1) > 0) return length - 1;
+            return length;
+        }
+        // Fix (*v*) ED  ->
+        if (endsWith(word, length, "ed")) {
+            if (containsVowel(word, length - 2)) {
+                return step1b2(word, length - 2);
+            }
+            return length;
+        }
+        // Fix (*v*) ING ->
+        if (endsWith(word, length, "ing")) {
+            if (containsVowel(word, length - 3)) {
+                return step1b2(word, length - 3);
+            }
+            return length;
+        }
+        return length;
+    }
+
+    private int step1b2(char[] word, int length) {
+        // Fix AT -> ATE, BL -> BLE, IZ -> IZE
+        if (endsWith(word, length, "at") || endsWith(word, length, "bl") || endsWith(word, length, "iz")) {
+            word[length] = 'e';
+            return length + 1;
+        }
+        // Fix (*d and not (*L or *S or *Z)) -> single letter
+        char lastDoubleConsonant = getLastDoubleConsonant(word, length);
+        if (lastDoubleConsonant != 0
+                && lastDoubleConsonant != 'l'
+                && lastDoubleConsonant != 's'
+                && lastDoubleConsonant != 'z') {
+            return length - 1;
+        }
+        // Fix (m=1 and *o) -> E
+        if (getM(word, length) == 1 && isStarO(word, length)) {
+            word[length] = 'e';
+            return length + 1;
+        }
+        return length;
+    }
+
+    /**
+     * Fix word ending with y
+     */
+    private int stemGroupOneC(char[] word, int length) {
+        if (endsWith(word, length, "y") && containsVowel(word, length - 1)) {
+            word[length - 1] = 'i';
+        }
+        return length;
+    }
+
+    /**
+     * Fix specific character sequences
+     */
+    private int stemGroupTwo(char[] word, int length) {
+        return replaceSuffix(word, length, STEP_TWO_SUFFIXES, STEP_TWO_REPLACEMENTS);
+    }
+
+    /**
+     * Fix specific character sequences
+     */
+    private int stemGroupThree(char[] word, int length) {
+        return replaceSuffix(word, length, STEP_THREE_SUFFIXES, STEP_THREE_REPLACEMENTS);
+    }
+
+    /**
+     * Replace the first of the suffixes that the word ends with if the measure of the stem is more than 0
+     */
+    private int replaceSuffix(char[] word, int length, String[] suffixes, String[] replacements) {
+        for (int i = 0; i < suffixes.length; i++) {
+            if (endsWith(word, length, suffixes[i])) {
+                int stem = length - suffixes[i].length();
+                if (getM(word, stem) > 0) {
+                    replacements[i].getChars(0, replacements[i].length(), word, stem);
+                    return stem + replacements[i].length();
+                }
+                return length;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Fix suffixes
+     */
+    private int stemGroupFour(char[] word, int length) {
+        for (String suffix : STEP_FOUR_SUFFIXES) {
+            if (endsWith(word, length, suffix)) {
+                int stem = length - suffix.length();
+                if (getM(word, stem) > 1) {
+                    if (suffix.equals("ion")) {
+                        if (word[stem - 1] == 's' || word[stem - 1] == 't') {
+                            return stem;
+                        }
+                    } else {
+                        return stem;
+                    }
+                }
+                return length;
+            }
+        }
+        return length;
+    }
+
+    private int stemGroupFiveA(char[] word, int length) {
+        if (endsWith(word, length, "e")) {
+            int m = getM(word, length - 1);
+            // (m>1) E
+            if (m > 1) {
+                return length - 1;
+            }
+            // (m=1 and not *o) E ->
+            if (m == 1 && !isStarO(word, length - 1)) {
+                return length - 1;
+            }
+        }
+        return length;
+    }
+
+    private int stemGroupFiveB(char[] word, int length) {
+        // (m > 1 and *d and *L) -> single letter
+        if (getM(word, length) > 1 && endsWith(word, length, "ll")) {
+            return length - 1;
+        }
+        return length;
+    }
+
+    private boolean endsWith(char[] word, int length, String suffix) {
+        int start = length - suffix.length();
+        if (start < 0) return false;
+        for (int i = suffix.length() - 1; i >= 0; i--) {
+            if (word[start + i] != suffix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private char getLastDoubleConsonant(char[] word, int length) {
+        if (length < 2) return 0;
+        char lastLetter = word[length - 1];
+        if (lastLetter == word[length - 2] && !isVowel(lastLetter)) {
+            return lastLetter;
+        }
+        return 0;
+    }
+
+    // *o  - the stem ends cvc, where the second c is not W, X or Y (e.g.
+    //                                                              -WIL, -HOP)
+    private boolean isStarO(char[] word, int length) {
+        if (length < 3) return false;
+
+        char lastLetter = word[length - 1];
+        if (lastLetter == 'w' || lastLetter == 'x' || lastLetter == 'y') return false;
+
+        return isConsonant(word, length - 1)
+                && !isConsonant(word, length - 2)
+                && isConsonant(word, length - 3);
+    }
+
+    /**
+     * The measure, m, of word[0] .. word[length - 1] which has the form [C](VC)^m[V], counted as the number of runs of
+     * consonants and vowels is read.
+     */
+    private int getM(char[] word, int length) {
+        if (length < 2) return 0;
+        boolean startsWithConsonant = isConsonant(word, 0);
+        boolean previous = startsWithConsonant;
+        int runs = 1;
+        for (int i = 1; i < length; i++) {
+            boolean consonant = isConsonant(word, i);
+            if (consonant != previous) {
+                runs++;
+                previous = consonant;
+            }
+        }
+        if (startsWithConsonant) return (runs - 1) / 2;
+        return runs / 2;
+    }
+
+    private boolean containsVowel(char[] word, int length) {
+        for (int i = 0; i < length; i++) {
+            if (!isConsonant(word, i)) return true;
+        }
+        return false;
+    }
+
+    private static boolean isVowel(char letter) {
+        return letter == 'a' || letter == 'e' || letter == 'i' || letter == 'o' || letter == 'u';
+    }
+
+    /**
+     * Is word[i] a consonant?  A Y is a consonant at the start of a word or after a vowel (and a vowel otherwise).
+     */
+    private boolean isConsonant(char[] word, int i) {
+        char letter = word[i];
+        if (isVowel(letter)) return false;
+        if (letter == 'y') return i == 0 || isVowel(word[i - 1]);
+        return true;
+    }
+}
@@ -0,0 +1,175 @@
+/*
+  IndexReader.java
+  ----------------
+  Copyright (c) 2019 Andrew Trotman and Kat Lilly
+  Minimalistic BM25 search engine.
+*/
+
+import java.io.File;
+import java.util.List;
+import java.nio.ByteOrder;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Properties;
+import java.util.Collections;
+import java.util.Comparator;
+import java.io.FileInputStream;
+import java.nio.charset.StandardCharsets;
+
+/*
+  CLASS INDEXREADER
+  -----------------
+  Read back an index as IndexWriter (or the C++ indexer) wrote it, to write it again:  its primary keys, its
+  document lengths, and its terms (in IndexWriter.TERM_ORDER) each with its postings decoded to <d,tf> pairs.  Only
+  the formats with term frequencies (raw, vbyte and blocked, see hasTfs()) can be decoded.  The vocabulary and the
+  postings are memory mapped, and are unmapped by close().
+*/
+class IndexReader {
+    String directory;
+    String postingsFormat;          // as recorded in format.bin (raw if there is none)
+    List<String> primaryKeys;
+    int[] lengths;
+    List<Term> terms = new ArrayList<Term>();       // in IndexWriter.TERM_ORDER
+    MappedFile vocab;
+    MappedFile postings;
+
+    /*
+      Class Term
+      ----------
+      A term of the vocabulary and where its postings list is
+    */
+    static class Term {
+        String term;
+        long where;
+        int size;
+
+        Term(String term, long where, int size) {
+            this.term = term;
+            this.where = where;
+            this.size = size;
+        }
+    }
+
+    /*
+      IndexReader()
+      -------------
+      Open the index in directory
+    */
+    IndexReader(String directory) throws IOException {
+        this.directory = directory;
+
+		/*
+		  The index format (indexes without a format.bin, such as those from the C++ indexer, are raw)
+		*/
+        Properties format = new Properties();
+        if (new File(path("format.bin")).exists()) {
+            FileInputStream formatFile = new FileInputStream(path("format.bin"));
+            format.load(formatFile);
+            formatFile.close();
+        }
+        postingsFormat = format.getProperty("postings", IndexWriter.RAW);
+
+		/*
+		  The primary keys and the document lengths
+		*/
+        primaryKeys = Files.readAllLines(Paths.get(path("docids.bin")));
+        ByteBuffer lengthsAsBytes = ByteBuffer.wrap(Files.readAllBytes(Paths.get(path("lengths.bin"))));
+        lengthsAsBytes.order(ByteOrder.nativeOrder());
+        lengths = new int[lengthsAsBytes.capacity() / 4];
+        lengthsAsBytes.asIntBuffer().get(lengths);
+
+		/*
+		  The vocabulary, sorted unless it already is (it has an offset table)
+		*/
+        vocab = new MappedFile(path("vocab.bin"));
+        postings = new MappedFile(path("postings.bin"));
+        ByteBuffer vocabAsBytes = vocab.whole().duplicate();
+        vocabAsBytes.order(ByteOrder.nativeOrder());
+        while (vocabAsBytes.position() < vocabAsBytes.capacity()) {
+            byte[] termAsBytes = new byte[vocabAsBytes.get() & 0xFF];
+            vocabAsBytes.get(termAsBytes);
+            vocabAsBytes.get();                 // the '\0' string terminator
+            long where = vocabAsBytes.getInt() & 0xFFFFFFFFL;
+            int size = vocabAsBytes.getInt();
+            terms.add(new Term(new String(termAsBytes, StandardCharsets.UTF_8), where, size));
+        }
+        if (!new File(path("vocaboffsets.bin")).exists())
+            Collections.sort(terms, new Comparator<Term>() {
+                public int compare(Term a, Term b) {
+                    return IndexWriter.TERM_ORDER.compare(a.term, b.term);
+                }
+            });
+    }
+
+    /*
+      path()
+      ------
+      The path of the given index file
+    */
+    String path(String filename) {
+        return new File(directory, filename).getPath();
+    }
+
+    /*
+      hasTfs()
+      --------
+      Does the index have term frequencies (so that its postings can be decoded)?
+    */
+    boolean hasTfs() {
+        return postingsFormat.equals(IndexWriter.RAW) || postingsFormat.equals(IndexWriter.VBYTE) || postingsFormat.equals(IndexWriter.BLOCKED);
+    }
+
+    /*
+      decodePostings()
+      ----------------
+      Decode the postings list of the term into an array of <d,tf> pairs
+    */
+    int[] decodePostings(Term term) throws IOException {
+        ByteBuffer list = postings.chunk(term.where, term.size);
+        int at = postings.offset(term.where);
+        if (list == null) {
+            list = postings.copy(term.where, term.size);
+            at = 0;
+        }
+        list = list.duplicate();
+        list.order(ByteOrder.nativeOrder());
+        list.limit(at + term.size);
+        list.position(at);
+
+        if (postingsFormat.equals(IndexWriter.BLOCKED)) {
+            BlockCursor cursor = new BlockCursor(list);
+            int[] pairs = new int[cursor.postings * 2];
+            for (int which = 0; cursor.next() != BlockCursor.NO_MORE_DOCS; which += 2) {
+                pairs[which] = cursor.doc;
+                pairs[which + 1] = cursor.tf();
+            }
+            return pairs;
+        }
+        if (postingsFormat.equals(IndexWriter.VBYTE)) {
+            int[] pairs = new int[JASSjr_search.readVByte(list) * 2];
+            for (int which = 0, d = -1; which < pairs.length; which += 2) {
+                pairs[which] = d += JASSjr_search.readVByte(list);
+                pairs[which + 1] = JASSjr_search.readVByte(list);
+            }
+            return pairs;
+        }
+        if (!postingsFormat.equals(IndexWriter.RAW))
+            throw new IOException("The " + postingsFormat + " postings in " + directory + " have no term frequencies");
+        int[] pairs = new int[term.size / 4];
+        list.asIntBuffer().get(pairs);
+        return pairs;
+    }
+
+    /*
+      close()
+      -------
+      Unmap the index files, no postings may be decoded afterwards
+    */
+    void close() {
+        vocab.close();
+        postings.close();
+    }
+}
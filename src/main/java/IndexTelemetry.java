@@ -0,0 +1,409 @@
+/*
+  IndexTelemetry.java
+  -------------------
+  Copyright (c) 2019 Andrew Trotman and Kat Lilly
+  Minimalistic BM25 search engine.
+*/
+
+import java.util.List;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.lang.reflect.Method;
+import java.lang.reflect.Constructor;
+import javax.management.Attribute;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+import javax.management.MBeanServer;
+import javax.management.DynamicMBean;
+import javax.management.AttributeList;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.LongAdder;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import javax.management.AttributeNotFoundException;
+
+/*
+  CLASS INDEXTELEMETRY
+  --------------------
+  The progress of indexing:  the documents, bytes of input and tokens indexed so far, the size of the vocabulary
+  (of the in-memory index), the postings, the heap in use, and the time spent in each phase.  The indexer counts
+  each document as it starts it (see JASSjr_index.indexBuffer()) into adders, so any number of threads can count
+  at once without contending.  A background thread reports the throughput since its last report (and an estimate
+  of the time to go) every interval seconds, and commits the same figures as a JFR event (jassjr.IndexProgress,
+  where the JVM has JFR);  they are also published over JMX as JASSjr:type=IndexTelemetry.  summary() reports the
+  time in each phase at the end.
+
+  Timing every token would slow the indexer down, so only one document in SAMPLE has its time split into parsing
+  (lexing), analysis (stopping and stemming), and inversion (adding postings to the in-memory index), and the
+  time spent in indexBuffer() is apportioned between them in the same proportions.
+*/
+class IndexTelemetry implements DynamicMBean {
+    /*
+      The phases of indexing, the first three of which are estimated from the sampled documents
+    */
+    static final int PARSE = 0;
+    static final int ANALYSE = 1;
+    static final int INVERT = 2;
+    static final int APPEND = 3;
+    static final int SPILL = 4;
+    static final int SERIALISE = 5;
+    static final String[] PHASES = {"parse", "analyse", "invert", "append", "spill", "serialise"};
+    static final int SAMPLE = 16;
+    static final String[] ATTRIBUTES = {"Documents", "InputBytes", "Tokens", "Vocabulary", "Postings", "HeapUsedBytes", "DocumentsPerSecond", "MegabytesPerSecond", "TokensPerSecond", "EtaSeconds", "ElapsedSeconds"};
+
+    LongAdder documents = new LongAdder();
+    LongAdder bytes = new LongAdder();
+    LongAdder tokens = new LongAdder();
+    LongAdder postings = new LongAdder();
+    volatile long vocabulary;               // terms in the in-memory index
+    long inputSize;                         // bytes of input to index (for the estimate of the time to go)
+    long started = System.nanoTime();
+    LongAdder indexing = new LongAdder();   // nanoseconds in indexBuffer() (less spilling), over all threads
+    LongAdder[] sampled = new LongAdder[3]; // nanoseconds of the sampled documents in each of PARSE, ANALYSE, INVERT
+    LongAdder[] phases = new LongAdder[PHASES.length];
+
+    ScheduledExecutorService reporter;
+    long lastTime;                          // the figures at the last report (for the throughput since then)
+    long lastDocuments;
+    long lastBytes;
+    long lastTokens;
+
+    /*
+      IndexTelemetry()
+      ----------------
+      Telemetry of indexing inputSize bytes
+    */
+    IndexTelemetry(long inputSize) {
+        this.inputSize = inputSize;
+        for (int which = 0; which < sampled.length; which++)
+            sampled[which] = new LongAdder();
+        for (int which = 0; which < phases.length; which++)
+            phases[which] = new LongAdder();
+        lastTime = started;
+    }
+
+    /*
+      indexed()
+      ---------
+      Count documents started, and the input bytes, tokens, and new postings since the last count
+    */
+    void indexed(int documents, long bytes, long tokens, long postings) {
+        this.documents.add(documents);
+        this.bytes.add(bytes);
+        this.tokens.add(tokens);
+        this.postings.add(postings);
+    }
+
+    /*
+      lap()
+      -----
+      Add the time since since to the sampled time of the phase, return now
+    */
+    static long lap(long[] times, int phase, long since) {
+        long now = System.nanoTime();
+        times[phase] += now - since;
+        return now;
+    }
+
+    /*
+      sampled()
+      ---------
+      Add the sampled times of the phases of some documents, and the total time spent in indexBuffer()
+    */
+    void sampled(long[] times, long nanoseconds) {
+        for (int which = 0; which < sampled.length; which++)
+            sampled[which].add(times[which]);
+        indexing.add(nanoseconds);
+    }
+
+    /*
+      phase()
+      -------
+      Add to the time spent in a phase (other than those sampled)
+    */
+    void phase(int phase, long nanoseconds) {
+        phases[phase].add(nanoseconds);
+    }
+
+    /*
+      seconds()
+      ---------
+      The seconds spent in a phase (over all threads)
+    */
+    double seconds(int phase) {
+        if (phase < sampled.length) {
+            long sum = 0;
+            for (LongAdder time : sampled)
+                sum += time.sum();
+            long spent = indexing.sum() - phases[SPILL].sum();
+            return sum == 0 ? 0 : (double) spent * sampled[phase].sum() / sum / 1e9;
+        }
+        return phases[phase].sum() / 1e9;
+    }
+
+    /*
+      elapsed()
+      ---------
+      Seconds since indexing started
+    */
+    double elapsed() {
+        return (System.nanoTime() - started) / 1e9;
+    }
+
+    /*
+      heapUsed()
+      ----------
+    */
+    static long heapUsed() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /*
+      eta()
+      -----
+      Estimated seconds until all the input has been indexed, at the rate so far (-1 if not known)
+    */
+    double eta() {
+        long done = bytes.sum();
+        if (done == 0 || inputSize == 0)
+            return -1;
+        return Math.max(0, inputSize - done) * elapsed() / done;
+    }
+
+    /*
+      start()
+      -------
+      Report progress every interval seconds on a background thread
+    */
+    void start(long interval) {
+        reporter = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "IndexTelemetry");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        reporter.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                report();
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /*
+      stop()
+      ------
+      Stop reporting progress
+    */
+    void stop() throws InterruptedException {
+        if (reporter == null)
+            return;
+        reporter.shutdown();
+        reporter.awaitTermination(1, TimeUnit.MINUTES);
+        reporter = null;
+    }
+
+    /*
+      report()
+      --------
+      Print the progress and the throughput since the last report, and commit it as a JFR event
+    */
+    void report() {
+        long now = System.nanoTime();
+        long documents = this.documents.sum();
+        long bytes = this.bytes.sum();
+        long tokens = this.tokens.sum();
+        double seconds = (now - lastTime) / 1e9;
+        double documentsPerSecond = (documents - lastDocuments) / seconds;
+        double megabytesPerSecond = (bytes - lastBytes) / seconds / (1024 * 1024);
+        double tokensPerSecond = (tokens - lastTokens) / seconds;
+        double eta = eta();
+        long heap = heapUsed();
+        System.out.printf("%d documents indexed, %.0f docs/s, %.1f MB/s, %.0f tokens/s, %d terms, %d postings, %d MB heap%s%n", documents, documentsPerSecond, megabytesPerSecond, tokensPerSecond, vocabulary, postings.sum(), heap / (1024 * 1024), eta < 0 ? "" : String.format(", ETA %.0fs", eta));
+        if (Jfr.AVAILABLE)
+            Jfr.commit(documents, bytes, tokens, vocabulary, postings.sum(), heap, documentsPerSecond, megabytesPerSecond, tokensPerSecond, eta);
+        lastTime = now;
+        lastDocuments = documents;
+        lastBytes = bytes;
+        lastTokens = tokens;
+    }
+
+    /*
+      summary()
+      ---------
+      The totals, overall throughput, and the time in each phase
+    */
+    String summary() {
+        double elapsed = elapsed();
+        StringBuilder summary = new StringBuilder(String.format("Indexed %d documents (%.1f MB, %d tokens) into %d postings in %.3f seconds: %.0f docs/s, %.1f MB/s, %.0f tokens/s", documents.sum(), bytes.sum() / (1024.0 * 1024), tokens.sum(), postings.sum(), elapsed, documents.sum() / elapsed, bytes.sum() / elapsed / (1024 * 1024), tokens.sum() / elapsed));
+        summary.append(String.format("%nSeconds per phase (over all threads, parse, analyse, and invert estimated from 1 document in %d):", SAMPLE));
+        for (int which = 0; which < PHASES.length; which++)
+            summary.append(String.format("%n  %-10s %10.3f", PHASES[which], seconds(which)));
+        return summary.toString();
+    }
+
+    /*
+      register()
+      ----------
+      Publish the telemetry on the platform MBean server (replacing any already there)
+    */
+    void register() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("JASSjr:type=IndexTelemetry");
+        if (server.isRegistered(name))
+            server.unregisterMBean(name);
+        server.registerMBean(this, name);
+    }
+
+    /*
+      getAttribute()
+      --------------
+      The attributes are ATTRIBUTES, whose rates are over the whole of indexing, and <phase>Seconds
+    */
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        double elapsed = elapsed();
+        if (attribute.equals("Documents"))
+            return documents.sum();
+        if (attribute.equals("InputBytes"))
+            return bytes.sum();
+        if (attribute.equals("Tokens"))
+            return tokens.sum();
+        if (attribute.equals("Vocabulary"))
+            return vocabulary;
+        if (attribute.equals("Postings"))
+            return postings.sum();
+        if (attribute.equals("HeapUsedBytes"))
+            return heapUsed();
+        if (attribute.equals("DocumentsPerSecond"))
+            return documents.sum() / elapsed;
+        if (attribute.equals("MegabytesPerSecond"))
+            return bytes.sum() / elapsed / (1024 * 1024);
+        if (attribute.equals("TokensPerSecond"))
+            return tokens.sum() / elapsed;
+        if (attribute.equals("EtaSeconds"))
+            return eta();
+        if (attribute.equals("ElapsedSeconds"))
+            return elapsed;
+        for (int which = 0; which < PHASES.length; which++)
+            if (attribute.equals(PHASES[which] + "Seconds"))
+                return seconds(which);
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes)
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException e) {
+                // leave it out, as the specification says
+            }
+        return list;
+    }
+
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException(attribute.getName() + " is read only");
+    }
+
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    public Object invoke(String operation, Object[] parameters, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(operation));
+    }
+
+    public MBeanInfo getMBeanInfo() {
+        MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[ATTRIBUTES.length + PHASES.length];
+        for (int which = 0; which < ATTRIBUTES.length; which++) {
+            boolean rate = ATTRIBUTES[which].endsWith("Second") || ATTRIBUTES[which].endsWith("Seconds");
+            attributes[which] = new MBeanAttributeInfo(ATTRIBUTES[which], rate ? "java.lang.Double" : "java.lang.Long", ATTRIBUTES[which], true, false, false);
+        }
+        for (int which = 0; which < PHASES.length; which++)
+            attributes[ATTRIBUTES.length + which] = new MBeanAttributeInfo(PHASES[which] + "Seconds", "java.lang.Double", "Seconds spent in " + PHASES[which] + " (over all threads)", true, false, false);
+        return new MBeanInfo(getClass().getName(), "Progress of JASSjr_index", attributes, null, new MBeanOperationInfo[0], null);
+    }
+
+    /*
+      CLASS JFR
+      ---------
+      The JFR event, made through reflection (with jdk.jfr.EventFactory) so that this compiles for, and runs on, Java 8
+      without JFR, and is only used where the JVM has it (Java 11, and 8u262, onwards)
+    */
+    static class Jfr {
+        static final String[] FIELDS = {"documents", "bytes", "tokens", "vocabulary", "postings", "heap", "documentsPerSecond", "megabytesPerSecond", "tokensPerSecond", "eta"};
+        static final String[] LABELS = {"Documents", "Input Bytes", "Tokens", "Vocabulary", "Postings", "Heap Used", "Documents per Second", "Megabytes per Second", "Tokens per Second", "Seconds to Go"};
+        static final Class<?>[] TYPES = {long.class, long.class, long.class, long.class, long.class, long.class, double.class, double.class, double.class, double.class};
+        static final boolean[] AMOUNTS = {false, true, false, false, false, true, false, false, false, false};
+
+        static Object factory;                  // jdk.jfr.EventFactory of jassjr.IndexProgress
+        static Method newEvent;
+        static Method isEnabled;
+        static Method set;
+        static Method commit;
+        static final boolean AVAILABLE = available();
+
+        /*
+          available()
+          -----------
+          Make the event factory, return false if the JVM has no JFR
+        */
+        static boolean available() {
+            try {
+                Class<?> element = Class.forName("jdk.jfr.AnnotationElement");
+                Constructor<?> annotation = element.getConstructor(Class.class, Object.class);
+                Constructor<?> field = Class.forName("jdk.jfr.ValueDescriptor").getConstructor(Class.class, String.class, List.class);
+                Class<?> label = Class.forName("jdk.jfr.Label");
+
+                List<Object> annotations = new ArrayList<Object>();
+                annotations.add(annotation.newInstance(Class.forName("jdk.jfr.Name"), "jassjr.IndexProgress"));
+                annotations.add(annotation.newInstance(label, "Indexing Progress"));
+                annotations.add(annotation.newInstance(Class.forName("jdk.jfr.Category"), new String[] {"JASSjr"}));
+                List<Object> fields = new ArrayList<Object>();
+                for (int which = 0; which < FIELDS.length; which++) {
+                    List<Object> fieldAnnotations = new ArrayList<Object>();
+                    fieldAnnotations.add(annotation.newInstance(label, LABELS[which]));
+                    if (AMOUNTS[which])
+                        fieldAnnotations.add(annotation.newInstance(Class.forName("jdk.jfr.DataAmount"), "BYTES"));
+                    fields.add(field.newInstance(TYPES[which], FIELDS[which], fieldAnnotations));
+                }
+
+                Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory");
+                factory = eventFactory.getMethod("create", List.class, List.class).invoke(null, annotations, fields);
+                newEvent = eventFactory.getMethod("newEvent");
+                Class<?> event = Class.forName("jdk.jfr.Event");
+                isEnabled = event.getMethod("isEnabled");
+                set = event.getMethod("set", int.class, Object.class);
+                commit = event.getMethod("commit");
+                return true;
+            } catch (Throwable e) {
+                return false;
+            }
+        }
+
+        /*
+          commit()
+          --------
+          Commit an event of the given figures (in the order of FIELDS)
+        */
+        static void commit(long documents, long bytes, long tokens, long vocabulary, long postings, long heap, double documentsPerSecond, double megabytesPerSecond, double tokensPerSecond, double eta) {
+            try {
+                Object event = newEvent.invoke(factory);
+                if (!(Boolean) isEnabled.invoke(event))
+                    return;
+                List<Object> values = Arrays.<Object>asList(documents, bytes, tokens, vocabulary, postings, heap, documentsPerSecond, megabytesPerSecond, tokensPerSecond, eta);
+                for (int which = 0; which < values.size(); which++)
+                    set.invoke(event, which, values.get(which));
+                commit.invoke(event);
+            } catch (Exception e) {
+                // no event, the progress has been printed anyway
+            }
+        }
+    }
+}
@@ -0,0 +1,461 @@
+/*
+  IndexWriter.java
+  ----------------
+  Copyright (c) 2019 Andrew Trotman and Kat Lilly
+  Minimalistic BM25 search engine.
+*/
+
+import java.io.File;
+import java.util.List;
+import java.util.Arrays;
+import java.nio.IntBuffer;
+import java.nio.ByteOrder;
+import java.nio.ByteBuffer;
+import java.io.IOException;
+import java.util.Comparator;
+import java.io.FileOutputStream;
+import java.io.DataOutputStream;
+import java.io.BufferedOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/*
+  CLASS INDEXWRITER
+  -----------------
+  Write an index to disk in the JASSjr format (the same format as the C++ indexer):
+    docids.bin   - the primary keys, one per line
+    lengths.bin  - the document lengths as native-endian 32-bit integers
+    postings.bin - the postings lists, either as native-endian 32-bit <d,tf> pairs ("raw", as the C++ indexer)
+                   or as the document frequency followed by variable-byte encoded <d-gap,tf> pairs ("vbyte")
+                   or as impact ordered segments of variable-byte encoded d-gaps ("impact", see encodeImpacts())
+                   or as blocks of <d-gap,tf> pairs with the maximum score in each block ("blocked", see encodeBlocks())
+                   or as the document frequency followed by <d-gap,impact> pairs ("quantised", see encodeQuantised())
+    vocab.bin    - per term: one byte length, UTF-8 string, '\0', 4 byte where, 4 byte size, in TERM_ORDER (where is
+                   unsigned, so postings.bin must be smaller than 4GB)
+    vocaboffsets.bin - the native-endian 32-bit offset of each term in vocab.bin (so it can be binary searched)
+    format.bin   - "name=value" lines describing the index (postings=raw, vbyte, impact, blocked or quantised, and
+                   for those that are scored when indexing, the BM25 k1 and b, and the bits of a quantised impact)
+  Primary keys and lengths may be added a batch at a time, and terms must be added in TERM_ORDER.
+*/
+class IndexWriter {
+    static final String RAW = "raw";
+    static final String VBYTE = "vbyte";
+    static final String IMPACT = "impact";
+    static final String BLOCKED = "blocked";
+    static final String QUANTISED = "quantised";
+
+    static final double K1 = 0.9;               // default BM25 k1 parameter
+    static final double B = 0.4;                // default BM25 b parameter
+    static final int IMPACT_LEVELS = 255;       // impact ordered impacts are quantised to 1 .. IMPACT_LEVELS
+    static final int BLOCK_SIZE = 128;          // postings per block
+    static final int MAX_TERM_BYTES = 0xFF;     // the longest term (in UTF-8) the one byte length in vocab.bin allows
+
+    /*
+      TERM_ORDER
+      ----------
+      Terms are sorted by Unicode code point, which is the same as the unsigned byte order of their UTF-8 encodings
+    */
+    static final Comparator<String> TERM_ORDER = new Comparator<String>() {
+        public int compare(String a, String b) {
+            int at = 0;
+            while (at < a.length() && at < b.length()) {
+                int first = a.codePointAt(at);
+                int second = b.codePointAt(at);
+                if (first != second)
+                    return first < second ? -1 : 1;
+                at += Character.charCount(first);
+            }
+            return a.length() - b.length();
+        }
+    };
+
+    String postingsFormat;
+    String directory;                           // where the index is written
+    double k1 = K1;                             // BM25 parameters for the formats that are scored when indexing
+    double b = B;
+    int quantisedBits = 8;                      // quantised impacts are 0 .. 2^quantisedBits - 1
+    DataOutputStream docIdFile;
+    DataOutputStream postingsStream;
+    long postingsLength;                        // bytes written to postingsStream (whose size() stops at 2GB)
+    DataOutputStream vocabFile;
+    DataOutputStream vocabOffsetsFile;
+    DataOutputStream docLengthsFile;
+
+    ByteBuffer byteBuffer = ByteBuffer.allocate(0);
+    IntBuffer intBuffer;
+    byte[] encoded = new byte[0];
+
+    int[] lengths = new int[0];                 // the document lengths (kept for impact ordered and blocked postings)
+    int documents;
+    double averageDocumentLength = -1;
+    int[] impacts = new int[0];
+    int[] order = new int[0];
+    int[] quantised = new int[0];
+
+    /*
+      IndexWriter()
+      -------------
+      Write an index with the given postings format (RAW or VBYTE) in the current directory
+    */
+    IndexWriter(String postingsFormat) throws IOException {
+        this(postingsFormat, ".");
+    }
+
+    /*
+      IndexWriter()
+      -------------
+      Write an index with the given postings format in the given directory
+    */
+    IndexWriter(String postingsFormat, String directory) throws IOException {
+        this.postingsFormat = postingsFormat;
+        this.directory = directory;
+        docIdFile = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path("docids.bin"))));
+        postingsStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path("postings.bin"))));
+        vocabFile = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path("vocab.bin"))));
+        vocabOffsetsFile = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path("vocaboffsets.bin"))));
+        docLengthsFile = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path("lengths.bin"))));
+    }
+
+    /*
+      path()
+      ------
+      The path of the given index file
+    */
+    String path(String filename) {
+        return new File(directory, filename).getPath();
+    }
+
+    /*
+      isScored()
+      ----------
+      Are the postings scored as the index is written (so need the document lengths and BM25 parameters)?
+    */
+    boolean isScored() {
+        return postingsFormat.equals(IMPACT) || postingsFormat.equals(BLOCKED) || postingsFormat.equals(QUANTISED);
+    }
+
+    /*
+      truncate()
+      ----------
+      The longest prefix of the term that is at most MAX_TERM_BYTES of UTF-8, cut between characters (so that it is
+      still valid UTF-8).  Longer terms are indexed, and looked up, as this.
+    */
+    static String truncate(String term) {
+        if (term.length() * 3 <= MAX_TERM_BYTES)
+            return term;                // each char is at most 3 bytes (a surrogate pair is 4)
+        int bytes = 0;
+        for (int at = 0; at < term.length(); ) {
+            int character = term.codePointAt(at);
+            bytes += character < 0x80 ? 1 : character < 0x800 ? 2 : character < 0x10000 ? 3 : 4;
+            if (bytes > MAX_TERM_BYTES)
+                return term.substring(0, at);
+            at += Character.charCount(character);
+        }
+        return term;
+    }
+
+    /*
+      toNativeEndian()
+      ----------------
+      Rearrange byte order so index matches that of CPP indexer
+    */
+    static int toNativeEndian(int value) {
+        return (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN) ? ((value & 0xFF) << 24) | (((value >>> 8) & 0xFF) << 16) | (((value >>> 16) & 0xFF) << 8) | (((value >>> 24) & 0xFF) << 0) : value;
+    }
+
+    /*
+      writeNative()
+      -------------
+      Write count integers from values[] to the stream as native-endian 32-bit integers
+    */
+    void writeNative(DataOutputStream stream, int[] values, int count) throws IOException {
+        if (byteBuffer.capacity() < count * 4) {
+            byteBuffer = ByteBuffer.allocate(count * 4);
+            byteBuffer.order(ByteOrder.nativeOrder());
+            intBuffer = byteBuffer.asIntBuffer();
+        }
+        intBuffer.rewind();
+        intBuffer.put(values, 0, count);
+        stream.write(byteBuffer.array(), 0, count * 4);
+    }
+
+    /*
+      addPrimaryKeys()
+      ----------------
+    */
+    void addPrimaryKeys(List<String> primaryKeys) throws IOException {
+        for (String primaryKey : primaryKeys) {
+            primaryKey += "\n";
+            docIdFile.write(primaryKey.getBytes(), 0, primaryKey.length());
+        }
+    }
+
+    /*
+      addLengths()
+      ------------
+    */
+    void addLengths(int[] lengths, int count) throws IOException {
+        writeNative(docLengthsFile, lengths, count);
+        if (isScored()) {
+            if (this.lengths.length < documents + count)
+                this.lengths = Arrays.copyOf(this.lengths, (documents + count) * 2);
+            System.arraycopy(lengths, 0, this.lengths, documents, count);
+            documents += count;
+        }
+    }
+
+    /*
+      score()
+      -------
+      The BM25 score of a posting, computed exactly as the search engine does.  All lengths must have been added.
+    */
+    double score(double idf, int d, int tf) {
+        if (averageDocumentLength < 0) {
+            averageDocumentLength = 0;
+            for (int which = 0; which < documents; which++)
+                averageDocumentLength += lengths[which];
+            averageDocumentLength /= documents;
+        }
+        return idf * ((tf * (k1 + 1)) / (tf + k1 * (1 - b + b * (lengths[d] / averageDocumentLength))));
+    }
+
+    /*
+      quantise()
+      ----------
+      Quantise a score between 0 and largest to an impact between 1 and levels, or 0 for a score of 0 (a term in every
+      document, whose idf is 0)
+    */
+    static int quantise(double score, double largest, int levels) {
+        if (score <= 0)
+            return 0;
+        return Math.max(1, Math.min(levels, (int) Math.ceil(score / largest * levels)));
+    }
+
+    /*
+      roundUp()
+      ---------
+      The smallest float that is no smaller than value (so that it can be used as an upper bound)
+    */
+    static float roundUp(double value) {
+        float rounded = (float) value;
+        return rounded < value ? Math.nextUp(rounded) : rounded;
+    }
+
+    /*
+      encodeImpacts()
+      ---------------
+      Encode size <d,tf> pairs from postings[] as an impact ordered list into encoded[], return its length.  The
+      BM25 score of each posting is quantised to an impact between 1 and IMPACT_LEVELS relative to the largest
+      score any posting could have, log(N) * (k1 + 1).  The list is the number of segments then, from the highest
+      impact to the lowest, a segment per impact: the impact, the number of documents, and their d-gaps (from -1).
+      A term in every document scores 0 and has no segments.  All lengths must be added before the first term.
+    */
+    int encodeImpacts(int[] postings, int size) {
+        if (encoded.length < size * 5 + (IMPACT_LEVELS + 1) * 10)
+            encoded = new byte[size * 5 + (IMPACT_LEVELS + 1) * 10];
+        if (size == documents)
+            return VariableByte.encode(encoded, 0, 0);
+
+		/*
+		  Quantise the BM25 score of each posting and count the postings with each impact
+		*/
+        double idf = Math.log((double) documents / size);
+        double largest = Math.log(documents) * (k1 + 1);
+        int[] count = new int[IMPACT_LEVELS + 1];
+        if (impacts.length < size) {
+            impacts = new int[size];
+            order = new int[size];
+        }
+        for (int which = 0; which < size; which++) {
+            int d = postings[which * 2];
+            int tf = postings[which * 2 + 1];
+            double score = score(idf, d, tf);
+            impacts[which] = quantise(score, largest, IMPACT_LEVELS);
+            count[impacts[which]]++;
+        }
+
+		/*
+		  Bucket the documents by impact, highest first (each bucket stays in document order)
+		*/
+        int[] start = new int[IMPACT_LEVELS + 1];
+        int segments = 0;
+        for (int impact = IMPACT_LEVELS, at = 0; impact > 0; impact--) {
+            start[impact] = at;
+            at += count[impact];
+            if (count[impact] != 0)
+                segments++;
+        }
+        for (int which = 0; which < size; which++)
+            order[start[impacts[which]]++] = postings[which * 2];
+
+		/*
+		  Write the segments
+		*/
+        int length = VariableByte.encode(encoded, 0, segments);
+        for (int impact = IMPACT_LEVELS, at = 0; impact > 0; impact--) {
+            if (count[impact] == 0)
+                continue;
+            length = VariableByte.encode(encoded, length, impact);
+            length = VariableByte.encode(encoded, length, count[impact]);
+            int previous = -1;
+            for (int end = at + count[impact]; at < end; at++) {
+                length = VariableByte.encode(encoded, length, order[at] - previous);
+                previous = order[at];
+            }
+        }
+        return length;
+    }
+
+    /*
+      encodeQuantised()
+      -----------------
+      Encode size <d,tf> pairs from postings[] as the document frequency followed by <d-gap,impact> pairs into
+      encoded[], return its length.  The impact is the BM25 score of the posting quantised to between 1 and
+      2^quantisedBits - 1 relative to the largest score any posting could have, log(N) * (k1 + 1), so that a search
+      engine can add impacts rather than compute scores.  A term in every document scores 0, so its impacts are 0.
+    */
+    int encodeQuantised(int[] postings, int size) {
+        if (encoded.length < size * 10 + 5)
+            encoded = new byte[size * 10 + 5];
+        if (quantised.length < size * 2)
+            quantised = new int[size * 2];
+        double idf = Math.log((double) documents / size);
+        double largest = Math.log(documents) * (k1 + 1);
+        int levels = (1 << quantisedBits) - 1;
+        for (int which = 0; which < size * 2; which += 2) {
+            quantised[which] = postings[which];
+            quantised[which + 1] = quantise(score(idf, postings[which], postings[which + 1]), largest, levels);
+        }
+        int length = VariableByte.encode(encoded, 0, size);
+        return VariableByte.encodePostings(encoded, length, quantised, size);
+    }
+
+    /*
+      encodeBlocks()
+      --------------
+      Encode size <d,tf> pairs from postings[] as a blocked list into encoded[], return its length.  The postings
+      are cut into blocks of BLOCK_SIZE, and the list is the number of postings, the number of blocks, and the
+      largest BM25 score in the list (a 4 byte native-endian float, rounded up), then a header for each block: the
+      d-gap from the last document of the previous block (from -1) to its last document, the length of the block
+      in bytes, and the largest score in the block (a float, rounded up).  Then the blocks, each of variable-byte
+      <d-gap,tf> pairs where the first gap is from the last document of the previous block.  The headers let a
+      search engine skip blocks without decoding them, and bound the score of the documents in them.
+    */
+    int encodeBlocks(int[] postings, int size) {
+        int blocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        if (encoded.length < size * 10 + blocks * 14 + 14)
+            encoded = new byte[size * 10 + blocks * 14 + 14];
+        ByteBuffer floats = ByteBuffer.wrap(encoded);
+        floats.order(ByteOrder.nativeOrder());
+        double idf = Math.log((double) documents / size);
+
+		/*
+		  Encode the blocks after space for the headers (at most 14 bytes each) then move them down to
+		  follow the headers once their length is known
+		*/
+        int[] blockLength = new int[blocks];
+        float[] blockMax = new float[blocks];
+        float listMax = 0;
+        int headers = 14 + blocks * 14;
+        int length = headers;
+        for (int block = 0; block < blocks; block++) {
+            int start = length;
+            int previous = block == 0 ? -1 : postings[(block * BLOCK_SIZE - 1) * 2];
+            double max = 0;
+            for (int which = block * BLOCK_SIZE; which < size && which < (block + 1) * BLOCK_SIZE; which++) {
+                length = VariableByte.encode(encoded, length, postings[which * 2] - previous);
+                length = VariableByte.encode(encoded, length, postings[which * 2 + 1]);
+                previous = postings[which * 2];
+                max = Math.max(max, score(idf, postings[which * 2], postings[which * 2 + 1]));
+            }
+            blockLength[block] = length - start;
+            blockMax[block] = roundUp(max);
+            listMax = Math.max(listMax, blockMax[block]);
+        }
+
+		/*
+		  Write the list header and the block headers
+		*/
+        int at = VariableByte.encode(encoded, 0, size);
+        at = VariableByte.encode(encoded, at, blocks);
+        floats.putFloat(at, listMax);
+        at += 4;
+        int previous = -1;
+        for (int block = 0; block < blocks; block++) {
+            int last = postings[(Math.min(size, (block + 1) * BLOCK_SIZE) - 1) * 2];
+            at = VariableByte.encode(encoded, at, last - previous);
+            previous = last;
+            at = VariableByte.encode(encoded, at, blockLength[block]);
+            floats.putFloat(at, blockMax[block]);
+            at += 4;
+        }
+        System.arraycopy(encoded, headers, encoded, at, length - headers);
+        return at + length - headers;
+    }
+
+    /*
+      addTerm()
+      ---------
+      Write the postings list (size <d,tf> pairs in postings[]) and the vocabulary entry for term
+    */
+    void addTerm(String term, int[] postings, int size) throws IOException {
+			/*
+			  write the postings list to one file
+			*/
+        long where = postingsLength;
+        int bytes;
+        if (postingsFormat.equals(VBYTE)) {
+            if (encoded.length < size * 10 + 5)
+                encoded = new byte[size * 10 + 5];
+            bytes = VariableByte.encode(encoded, 0, size);
+            bytes = VariableByte.encodePostings(encoded, bytes, postings, size);
+            postingsStream.write(encoded, 0, bytes);
+        } else if (postingsFormat.equals(IMPACT)) {
+            bytes = encodeImpacts(postings, size);
+            postingsStream.write(encoded, 0, bytes);
+        } else if (postingsFormat.equals(BLOCKED)) {
+            bytes = encodeBlocks(postings, size);
+            postingsStream.write(encoded, 0, bytes);
+        } else if (postingsFormat.equals(QUANTISED)) {
+            bytes = encodeQuantised(postings, size);
+            postingsStream.write(encoded, 0, bytes);
+        } else {
+            writeNative(postingsStream, postings, size * 2);
+            bytes = size * 2 * 4;
+        }
+        postingsLength += bytes;
+        if (postingsLength >= 1L << 32)
+            throw new IOException("postings.bin is 4GB or larger, which vocab.bin's 32-bit offsets can't address");
+
+			/*
+			  write the vocabulary to a second file (one byte length, string, '\0', 4 byte where, 4 byte size)
+			  and where that is to a third
+			*/
+        vocabOffsetsFile.writeInt(toNativeEndian(vocabFile.size()));
+        byte[] termAsBytes = truncate(term).getBytes(StandardCharsets.UTF_8);
+        vocabFile.write(termAsBytes.length);
+        vocabFile.write(termAsBytes);
+        vocabFile.write(0);
+        vocabFile.writeInt(toNativeEndian((int) where));         // unsigned
+        vocabFile.writeInt(toNativeEndian(bytes));
+    }
+
+    /*
+      close()
+      -------
+    */
+    void close() throws IOException {
+        FileOutputStream formatFile = new FileOutputStream(path("format.bin"));
+        formatFile.write(("postings=" + postingsFormat + "\n").getBytes());
+        if (isScored())
+            formatFile.write(("k1=" + k1 + "\nb=" + b + "\n").getBytes());
+        if (postingsFormat.equals(QUANTISED))
+            formatFile.write(("bits=" + quantisedBits + "\n").getBytes());
+        formatFile.close();
+
+        docIdFile.close();
+        postingsStream.close();
+        vocabFile.close();
+        vocabOffsetsFile.close();
+        docLengthsFile.close();
+    }
+}
@@ -5,19 +5,30 @@
   Minimalistic BM25 search engine.
 */
 
+import java.io.File;
 import java.lang.Thread;
 import java.util.Arrays;
+import java.util.List;
 import java.util.HashMap;
-import java.nio.IntBuffer;
-import java.nio.ByteOrder;
 import java.util.ArrayList;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.util.Collections;
 import java.nio.ByteBuffer;
-import java.util.stream.Stream;
+import java.io.IOException;
+import java.util.Comparator;
+import java.io.EOFException;
+import java.util.PriorityQueue;
+import java.io.FileInputStream;
+import java.io.DataInputStream;
 import java.io.FileOutputStream;
 import java.io.DataOutputStream;
+import java.io.RandomAccessFile;
+import java.util.concurrent.Future;
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutorService;
 
 /*
   CLASS JASSJR_INDEX
@@ -25,252 +36,807 @@ import java.io.BufferedOutputStream;
 */
 class JASSjr_index {
     /*
-      CLASS POSTING
-      -------------
+      CLASS POSTINGSLIST
+      ------------------
+      A growable postings list of <d,tf> pairs held as d-gaps and tfs variable-byte encoded into a byte array.  The
+      most recent posting is held unencoded (in lastDoc and tf) until the next document is seen, so the tf can be
+      incremented in place.
     */
-    public class Posting {
-        public int d, tf;
+    public static class PostingsList {
+        byte[] bytes = new byte[8];
+        int length;                 // bytes used in bytes[]
+        int size;                   // number of postings (including the one in lastDoc and tf)
+        int lastDoc = -1;           // gaps are from -1 as the first document number can be -1
+        int encodedDoc = -1;        // the last document number that has been encoded into bytes[]
+        int tf;
+
+        /*
+          add()
+          -----
+          Add an occurence of the term in document d (which must not be less than the last d seen).
+        */
+        public void add(int d) {
+            add(d, 1);
+        }
+
+        /*
+          add()
+          -----
+          Add tf occurences of the term in document d (which must not be less than the last d seen).
+        */
+        public void add(int d, int tf) {
+            if (size != 0 && d == lastDoc)
+                this.tf += tf;
+            else {
+                if (size != 0)
+                    flush();
+                lastDoc = d;
+                this.tf = tf;
+                size++;
+            }
+        }
+
+        /*
+          size()
+          ------
+        */
+        public int size() {
+            return size;
+        }
 
-        Posting(int d, int tf) {
-            this.d = d;
-            this.tf = tf;
+        /*
+          flush()
+          -------
+          Encode the pending posting into bytes[]
+        */
+        void flush() {
+            if (length + 10 > bytes.length)
+                bytes = Arrays.copyOf(bytes, bytes.length + (bytes.length >> 1) + 10);
+            length = VariableByte.encode(bytes, length, lastDoc - encodedDoc);
+            length = VariableByte.encode(bytes, length, tf);
+            encodedDoc = lastDoc;
+        }
+
+        /*
+          decode()
+          --------
+          Decode the postings list into into[] as <d,tf> pairs, into[] must be at least size() * 2 integers long.
+        */
+        public void decode(int[] into) {
+            if (size == 0)
+                return;
+            VariableByte.decodePostings(bytes, 0, into, size - 1);
+            into[size * 2 - 2] = lastDoc;
+            into[size * 2 - 1] = tf;
         }
     }
 
-    public class PostingsList extends ArrayList<Posting> {
+    /*
+      CLASS INTVECTOR
+      ---------------
+      A growable array of int.
+    */
+    public static class IntVector {
+        int[] values = new int[1024];
+        int size;
+
+        public void add(int value) {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size + (size >> 1));
+            values[size++] = value;
+        }
+
+        public void addAll(IntVector other) {
+            if (size + other.size > values.length)
+                values = Arrays.copyOf(values, size + other.size);
+            System.arraycopy(other.values, 0, values, size, other.size);
+            size += other.size;
+        }
+
+        public int get(int which) {
+            return values[which];
+        }
+
+        public int size() {
+            return size;
+        }
     }
 
-    String buffer;
-    int current;
-    String nextToken;
+    static final int NEW_TERM_BYTES = 160;     // approximate heap used by a new term (string, map entry, and postings list)
+
+    static final int WINDOW_SIZE = 1 << 30;   // the input file is mapped this many bytes at a time
+
+    ByteLexer lexer = new ByteLexer();
+    int docId = -1;             // the current document
+    int documentLength;         // the length of the current document
+    boolean pushNext;           // is the next token the primary key?
     HashMap<String, PostingsList> vocab = new HashMap<String, PostingsList>();
     ArrayList<String> docIds = new ArrayList<String>();
-    ArrayList<Integer> lengthVector = new ArrayList<Integer>();
+    IntVector lengthVector = new IntVector();
+
+    long memoryBudget;          // spill to disk when the in-memory index is about this large (0 for never)
+    long memoryUsed;            // estimate of the size of the in-memory index
+    IndexWriter output;         // the index being written when spilling
+    int documentsSpilled;       // the number of documents written to the index by spill()
+    String postingsFormat = IndexWriter.RAW;
+    double k1 = IndexWriter.K1;                 // BM25 parameters (for the postings formats scored when indexing)
+    double b = IndexWriter.B;
+    int quantisedBits = 8;
+    String directory = ".";     // where the index (and the runs) are written
+    int mergeFactor = 10;       // segments per tier of a segmented index (see Segments)
+    ArrayList<String> runs = new ArrayList<String>();
+    IndexTelemetry telemetry;   // where to count the progress of indexing, or null not to
+
+    /*
+      indexBuffer()
+      -------------
+      Index the documents in input (from position from up to position to) into this (in-memory) index.  Document
+      numbers carry on from those of the previous call, so input should start at a document boundary.  Call
+      finish() after the last call.  With telemetry the progress is counted as each document starts (and if
+      verbose this is the index whose vocabulary size is reported).
+    */
+    public void indexBuffer(ByteBuffer input, int from, int to, AnalysisPipeline pipeline, boolean verbose) throws IOException {
+        long started = telemetry == null ? 0 : System.nanoTime();
+        long spilling = 0;              // nanoseconds spent spilling
+        int counted = from;             // the input before this has been counted
+        long tokens = 0;                // tokens and new postings since the last count
+        long postings = 0;
+        boolean sampled = false;        // is the current document's time being split into phases?
+        long[] times = new long[3];     // the time of the sampled documents in each phase (see IndexTelemetry)
+        long now = 0;
+
+        lexer.reset(input, from, to);
+        while (lexer.next()) {
+            if (lexer.is("<DOC>")) {
+					/*
+					  Save the previous document length
+					*/
+                if (docId != -1)
+                    lengthVector.add(documentLength);
+
+					/*
+					  If the in-memory index has become too large then write it out as a run
+					*/
+                if (memoryBudget != 0 && memoryUsed > memoryBudget) {
+                    long start = telemetry == null ? 0 : System.nanoTime();
+                    spill();
+                    spilling += telemetry == null ? 0 : System.nanoTime() - start;
+                }
+
+					/*
+					  Move on to the next document
+					*/
+                docId++;
+                documentLength = 0;
+
+					/*
+					  Count it (and what has been indexed since the last count), and choose whether to time it
+					*/
+                if (telemetry != null) {
+                    telemetry.indexed(1, lexer.current - counted, tokens, postings);
+                    if (verbose)
+                        telemetry.vocabulary = vocab.size();
+                    counted = lexer.current;
+                    tokens = 0;
+                    postings = 0;
+                    sampled = docId % IndexTelemetry.SAMPLE == 0;
+                    now = sampled ? System.nanoTime() : 0;
+                }
+            }
+
+				/*
+				  if the last token we saw was a <DOCNO> then the next token is the primary key
+				*/
+            if (pushNext) {
+                docIds.add(lexer.toString());
+                pushNext = false;
+            }
+            if (lexer.is("<DOCNO>"))
+                pushNext = true;
+
+				/*
+				  Don't index XML tags
+				*/
+            if (lexer.token[0] == '<')
+                continue;
+            tokens++;
+
+				/*
+				  lower case the string then stop and stem it (the pipeline remembers recent tokens)
+				*/
+            lexer.toLowerCase();
+            if (sampled)
+                now = IndexTelemetry.lap(times, IndexTelemetry.PARSE, now);
+            String token = pipeline.analyse(lexer.token, lexer.length);
+            if (sampled)
+                now = IndexTelemetry.lap(times, IndexTelemetry.ANALYSE, now);
+            if (token == null)
+                continue;
+
+				/*
+				  truncate any long tokens at 255 charactes (so that the length can be stored first and in a single byte)
+				*/
+            if (token.length() > 0xFF)
+                token = token.substring(0, 0xFF);
+
+				/*
+				  add the posting to the in-memory index
+				*/
+            PostingsList list = vocab.get(token);
+            if (list == null) {
+                list = new PostingsList();
+                vocab.put(token, list);                     // if the term isn't in the vocab yet
+                memoryUsed += NEW_TERM_BYTES + token.length() * 2;
+            }
+            int allocated = list.bytes.length;
+            int size = list.size();
+            list.add(docId);                                // add the <d,tf> pair or increase tf
+            memoryUsed += list.bytes.length - allocated;
+            postings += list.size() - size;
+
+				/*
+				  compute the document length
+				*/
+            documentLength++;
+            if (sampled)
+                now = IndexTelemetry.lap(times, IndexTelemetry.INVERT, now);
+        }
+
+        if (telemetry != null) {
+            telemetry.indexed(0, to - counted, tokens, postings);
+            if (verbose)
+                telemetry.vocabulary = vocab.size();
+            telemetry.sampled(times, System.nanoTime() - started - spilling);
+            telemetry.phase(IndexTelemetry.SPILL, spilling);
+        }
+    }
 
     /*
-        toNativeEndian()
-        ----------------
-        Rearrange byte order so index matches that of CPP indexer
+      finish()
+      --------
+      Save the final document length
     */
-    public int toNativeEndian(int value) {
-        return (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN) ? ((value & 0xFF) << 24) | (((value >>> 8) & 0xFF) << 16) | (((value >>> 16) & 0xFF) << 8) | (((value >>> 24) & 0xFF) << 0) : value;
+    public void finish() {
+        lengthVector.add(documentLength);
     }
 
     /*
-      lexGetNext()
-      ------------
-      One-character lookahead lexical analyser
+      append()
+      --------
+      Merge an index of the documents that immediately follow those already in this index onto the end of this index.
+      The chunk's document numbers are shifted up by the number of documents already indexed.
     */
-    public String lexGetNext() {
-		/*
-		  Skip over whitespace and punctuation (but not XML tags)
-		*/
-        while (current < buffer.length() && !Character.isLetterOrDigit(buffer.charAt(current)) && buffer.charAt(current) != '<')
-            current++;
+    public void append(JASSjr_index chunk) {
+        int offset = lengthVector.size();
+
+        for (HashMap.Entry<String, PostingsList> entry : chunk.vocab.entrySet()) {
+            PostingsList list = vocab.get(entry.getKey());
+            if (list == null) {
+                list = new PostingsList();
+                vocab.put(entry.getKey(), list);
+            }
+            int[] postings = new int[entry.getValue().size() * 2];
+            entry.getValue().decode(postings);
+            for (int which = 0; which < postings.length; which += 2)
+                list.add(postings[which] + offset, postings[which + 1]);
+        }
+        docIds.addAll(chunk.docIds);
+        lengthVector.addAll(chunk.lengthVector);
+    }
+
+    /*
+      indexParallel()
+      ---------------
+      Index input (from position from up to position to) on several threads.  The input is cut into runs of whole
+      documents (at lines starting with <DOC>), each thread indexes a run into its own in-memory index, and the
+      runs are then appended in collection order so the document numbers (and therefore the index) are the same
+      as those produced by a single thread.
+    */
+    public void indexParallel(final ByteBuffer input, int from, int to, ExecutorService pool, int chunks, final ThreadLocal<AnalysisPipeline> pipelines) throws Exception {
+        List<Future<JASSjr_index>> futures = new ArrayList<Future<JASSjr_index>>();
+        int target = Math.max(1, (to - from) / chunks);
+        while (from < to) {
+            final int start = from;
+            final int end = ByteLexer.nextDocument(input, Math.min(to, from + target), to);
+            futures.add(pool.submit(new Callable<JASSjr_index>() {
+                public JASSjr_index call() throws IOException {
+                    JASSjr_index index = new JASSjr_index();
+                    index.telemetry = telemetry;
+                    index.indexBuffer(input, start, end, pipelines.get(), false);
+                    index.finish();
+                    return index;
+                }
+            }));
+            from = end;
+        }
 
 		/*
-		  A token is either an XML tag '<'..'>' or a sequence of alpha-numerics.
-		*/
-        int start = current;
-        if (current >= buffer.length())
-            return null;     // must be at end of line
-        else if (Character.isLetterOrDigit(buffer.charAt(current)))
-            while (current < buffer.length() && (Character.isLetterOrDigit(buffer.charAt(current)) || buffer.charAt(current) == '-'))                // TREC <DOCNO> primary keys have a hyphen in them
-                current++;
-        else if (buffer.charAt(current) == '<')
-            for (current++; current < buffer.length() && buffer.charAt(current - 1) != '>'; current++) { /* do nothing */ }
-		/*
-		  Copy and return the token
+		  Merge the chunks in order, releasing each as soon as it has been merged
 		*/
-        return buffer.substring(start, current);
+        for (int which = 0; which < futures.size(); which++) {
+            JASSjr_index chunk = futures.get(which).get();
+            long start = System.nanoTime();
+            append(chunk);
+            futures.set(which, null);
+            if (telemetry != null) {
+                telemetry.phase(IndexTelemetry.APPEND, System.nanoTime() - start);
+                telemetry.vocabulary = vocab.size();
+            }
+        }
+    }
+
+    /*
+      indexFile()
+      -----------
+      Index the given file on the given number of threads.  The file is memory mapped a window at a time, each
+      window ending at a document boundary.
+    */
+    public void indexFile(String filename, int threads, final StopWord stopWord, final InPlacePorterStemmer porterStemmer) throws Exception {
+        ExecutorService pool = threads == 1 ? null : Executors.newFixedThreadPool(threads);
+        final List<AnalysisPipeline> pipelines = Collections.synchronizedList(new ArrayList<AnalysisPipeline>());
+        ThreadLocal<AnalysisPipeline> threadPipeline = new ThreadLocal<AnalysisPipeline>() {
+            protected AnalysisPipeline initialValue() {
+                AnalysisPipeline pipeline = new AnalysisPipeline(stopWord, porterStemmer);
+                pipelines.add(pipeline);
+                return pipeline;
+            }
+        };
+
+        FileChannel channel = new RandomAccessFile(filename, "r").getChannel();
+        try {
+            long size = channel.size();
+            for (long start = 0; start < size; ) {
+                int length = (int) Math.min(WINDOW_SIZE, size - start);
+                ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                int end = start + length == size ? length : ByteLexer.lastDocument(window, 0, length);
+
+                if (pool == null)
+                    indexBuffer(window, 0, end, threadPipeline.get(), true);
+                else
+                    indexParallel(window, 0, end, pool, threads * 4, threadPipeline);
+                start += end;
+            }
+            if (pool == null)
+                finish();
+        } finally {
+            channel.close();
+            if (pool != null)
+                pool.shutdown();
+        }
+        System.out.println(AnalysisPipeline.report(pipelines));
     }
 
     /*
-      lexGetFirst()
+      sortedTerms()
       -------------
-      Start the lexical analysis process
+      The vocabulary in sorted order (the order in which terms are written to disk)
     */
-    public String lexGetFirst(String with) {
-        buffer = with;
-        current = 0;
+    String[] sortedTerms() {
+        String[] terms = vocab.keySet().toArray(new String[0]);
+        Arrays.sort(terms, IndexWriter.TERM_ORDER);
+        return terms;
+    }
 
-        return lexGetNext();
+    /*
+      openWriter()
+      ------------
+      Start writing the index (in directory)
+    */
+    IndexWriter openWriter() throws IOException {
+        IndexWriter writer = new IndexWriter(postingsFormat, directory);
+        writer.k1 = k1;
+        writer.b = b;
+        writer.quantisedBits = quantisedBits;
+        return writer;
     }
 
     /*
-      engage()
-      --------
-      Simple indexer for TREC WSJ collection
+      spill()
+      -------
+      Write the primary keys and lengths seen so far to the index, and the in-memory postings to a new run
+      file, then empty the in-memory index.  Runs are written in sorted term order so they can be merged.
     */
-    public void engage(String args[]) throws Exception {
-        int docId = -1;
-        int documentLength = 0;
+    void spill() throws IOException {
+        if (output == null)
+            output = openWriter();
+        output.addPrimaryKeys(docIds);
+        output.addLengths(lengthVector.values, lengthVector.size());
+        documentsSpilled += lengthVector.size();
+        docIds = new ArrayList<String>();
+        lengthVector = new IntVector();
+
+        String filename = new File(directory, "run" + runs.size() + ".tmp").getPath();
+        DataOutputStream runFile = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)));
+        int[] postings = new int[0];
+        byte[] encoded = new byte[0];
+        for (String term : sortedTerms()) {
+            PostingsList list = vocab.get(term);
+            if (postings.length < list.size() * 2) {
+                postings = new int[list.size() * 2];
+                encoded = new byte[list.size() * 10];
+            }
+            list.decode(postings);
+            int length = VariableByte.encodePostings(encoded, 0, postings, list.size());
 
-        // Add stop words implementation
-        StopWord stopWord = new StopWord("stopwords-en.txt");
+            runFile.writeUTF(term);
+            runFile.writeInt(list.size());
+            runFile.writeInt(length);
+            runFile.write(encoded, 0, length);
+        }
+        runFile.close();
+        runs.add(filename);
 
-        // Add porter stemmer
-        PorterStemmer porterStemmer = new PorterStemmer();
+        vocab = new HashMap<String, PostingsList>();
+        memoryUsed = 0;
+        System.out.println("Wrote run " + filename);
+    }
 
-		/*
-		  Make sure we have one paramter, the filename
-		*/
-        if (args.length != 1) {
-            System.out.println("Usage: java " + Thread.currentThread().getStackTrace()[1].getClassName() + " <infile.xml>");
-            System.exit(0);
+    /*
+      CLASS RUN
+      ---------
+      Sequential reader of a run file written by spill()
+    */
+    static class Run {
+        int number;                 // which run (runs are merged in this order)
+        DataInputStream file;
+        String term;                // the current term (null at end of run)
+        int[] postings = new int[0];
+        int size;
+        byte[] encoded = new byte[0];
+
+        Run(int number, String filename) throws IOException {
+            this.number = number;
+            file = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)));
+            next();
         }
 
-        Stream<String> stream = Files.lines(Paths.get(args[0]));
-        Boolean pushNext = false;
-        for (String line : (Iterable<String>) stream::iterator) {
-            String token;
-            for (token = lexGetFirst(line); token != null; token = lexGetNext()) {
-                if (token.equals("<DOC>")) {
-						/*
-						  Save the previous document length
-						*/
-                    if (docId != -1)
-                        lengthVector.add(documentLength);
-			
-						/*
-						  Move on to the next document
-						*/
-                    docId++;
-                    documentLength = 0;
-
-                    if ((docId % 10) == 0)
-                        System.out.println(docId + " documents indexed");
-                }
+        /*
+          next()
+          ------
+          Move on to the next term in the run
+        */
+        void next() throws IOException {
+            try {
+                term = file.readUTF();
+            } catch (EOFException e) {
+                term = null;
+                file.close();
+                return;
+            }
+            size = file.readInt();
+            int length = file.readInt();
+            if (encoded.length < length)
+                encoded = new byte[length];
+            file.readFully(encoded, 0, length);
+            if (postings.length < size * 2)
+                postings = new int[size * 2];
+            VariableByte.decodePostings(encoded, 0, postings, size);
+        }
+    }
 
-					/*
-					  if the last token we saw was a <DOCNO> then the next token is the primary key
-					*/
-                if (pushNext) {
-                    docIds.add(token);
-                    pushNext = false;
-                }
-                if (token.equals("<DOCNO>"))
-                    pushNext = true;
+    /*
+      merge()
+      -------
+      k-way merge the runs into the index.  A term's postings lists are concatenated in run order (and so
+      document order).  Only one postings list per run is in memory at a time.
+    */
+    void merge() throws IOException {
+        PriorityQueue<Run> heap = new PriorityQueue<Run>(runs.size(), new Comparator<Run>() {
+            public int compare(Run a, Run b) {
+                int cmp = IndexWriter.TERM_ORDER.compare(a.term, b.term);
+                return cmp != 0 ? cmp : Integer.compare(a.number, b.number);
+            }
+        });
+        for (int which = 0; which < runs.size(); which++) {
+            Run run = new Run(which, runs.get(which));
+            if (run.term != null)
+                heap.add(run);
+        }
 
-					/*
-					  Don't index XML tags
-					*/
-                if (token.charAt(0) == '<')
-                    continue;
+        int[] postings = new int[1024];
+        while (!heap.isEmpty()) {
+            String term = heap.peek().term;
+            int size = 0;
+            while (!heap.isEmpty() && heap.peek().term.equals(term)) {
+                Run run = heap.poll();
+                if (postings.length < (size + run.size) * 2)
+                    postings = Arrays.copyOf(postings, (size + run.size) * 4);
+                System.arraycopy(run.postings, 0, postings, size * 2, run.size * 2);
+                size += run.size;
+                run.next();
+                if (run.term != null)
+                    heap.add(run);
+            }
+            output.addTerm(term, postings, size);
+        }
 
-					/*
-					  lower case the string
-					*/
-                token = token.toLowerCase();
+        for (String filename : runs)
+            new File(filename).delete();
+    }
 
-                // Implement stop words filter
-                if (stopWord.isStopWord(token))
-                    continue;
+    /*
+      serialise()
+      -----------
+      Write the in-memory index to disk.  Terms are written in sorted order so that the output does not depend
+      on the order in which terms were added to the vocabulary.  If runs have been spilled to disk then the
+      remainder of the index is spilled and the runs are merged.
+    */
+    public void serialise() throws Exception {
+        long start = System.nanoTime();
+        if (!runs.isEmpty()) {
+            spill();
+            merge();
+            output.close();
+        } else
+            write();
+        if (telemetry != null)
+            telemetry.phase(IndexTelemetry.SERIALISE, System.nanoTime() - start);
+    }
 
-                // Add Porter Stemmer
-                token = porterStemmer.stemWord(token);
+    /*
+      write()
+      -------
+      Write the in-memory index (when no runs have been spilled)
+    */
+    void write() throws Exception {
+        IndexWriter writer = openWriter();
+        writer.addPrimaryKeys(docIds);
+        writer.addLengths(lengthVector.values, lengthVector.size());
+
+        int[] linear = new int[0];
+        for (String term : sortedTerms()) {
+            PostingsList postings = vocab.get(term);
+            if (linear.length < postings.size() * 2)
+                linear = new int[postings.size() * 2];
+            postings.decode(linear);
+            writer.addTerm(term, linear, postings.size());
+        }
+        writer.close();
+    }
 
-					/*
-					  truncate any long tokens at 255 charactes (so that the length can be stored first and in a single byte)
-					*/
-                if (token.length() > 0xFF)
-                    token = token.substring(0, 0xFF);
+    /*
+      reimpact()
+      ----------
+      Write the index in the from directory (which must have term frequencies) to directory in the current
+      postings format and with the current BM25 parameters, without re-reading the documents.
+    */
+    public void reimpact(String from) throws Exception {
+        if (new File(from).getCanonicalPath().equals(new File(directory).getCanonicalPath())) {
+            System.out.println("Can't re-impact the index in the current directory into itself");
+            System.exit(1);
+        }
+        if (Segments.exists(from)) {
+            System.out.println("Can't re-impact the segmented index in " + from + " (merge it into one segment with -mergeall, then re-impact the directory of that segment)");
+            System.exit(1);
+        }
+        IndexReader source = new IndexReader(from);
+        try {
+            if (!source.hasTfs()) {
+                System.out.println("The index in " + from + " has no term frequencies (use a raw, vbyte or blocked index)");
+                System.exit(1);
+            }
 
-					/*
-					  add the posting to the in-memory index
-					*/
-                PostingsList list = vocab.get(token);
-                if (list == null) {
-                    PostingsList newList = new PostingsList();
-                    newList.add(new Posting(docId, 1));
-                    vocab.put(token, newList);                  // if the term isn't in the vocab yet
-                } else if (list.get(list.size() - 1).d != docId)
-                    list.add(new Posting(docId, 1));            // if the docno for this occurence hasn't changed the increase tf
-                else
-                    list.get(list.size() - 1).tf++;             // else create a new <d,tf> pair.
-		    
-					/*
-					  compute the document length
-					*/
-                documentLength++;
+            IndexWriter writer = openWriter();
+            writer.addPrimaryKeys(source.primaryKeys);
+            writer.addLengths(source.lengths, source.lengths.length);
+            for (IndexReader.Term term : source.terms) {
+                int[] postings = source.decodePostings(term);
+                writer.addTerm(term.term, postings, postings.length / 2);
             }
+            writer.close();
+        } finally {
+            source.close();
         }
-	
+        System.out.println("Re-impacted " + source.lengths.length + " documents");
+    }
+
+    /*
+      addSegment()
+      ------------
+      Index the file into a new segment of the segmented index in segmentsDirectory (see Segments) and publish it.
+      The postings must be raw or vbyte, which are scored when searching (with the statistics of all the segments), as
+      every segment is indexed without knowing of the others.  A search engine serving the index picks up each
+      manifest as it is published, so the new documents are searchable as soon as this returns.  Segments are not
+      merged here, that is left to a merger (see mergeTiers()) so adding a batch never waits for a merge.
+    */
+    void addSegment(String segmentsDirectory, String filename, int threads, StopWord stopWord, InPlacePorterStemmer porterStemmer) throws Exception {
+        if (!postingsFormat.equals(IndexWriter.RAW) && !postingsFormat.equals(IndexWriter.VBYTE)) {
+            System.out.println("The postings of a segmented index must be raw or vbyte");
+            System.exit(1);
+        }
+        Segments segments = Segments.open(segmentsDirectory);
+        try {
+            if (!segments.names.isEmpty() && !segments.postingsFormat.equals(postingsFormat)) {
+                System.out.println("The segments in " + segmentsDirectory + " have " + segments.postingsFormat + " postings (use -postings " + segments.postingsFormat + ")");
+                System.exit(1);
+            }
+
+            String name = segments.reserve();
+            directory = segments.path(name);
+            indexFile(filename, threads, stopWord, porterStemmer);
+            telemetry.stop();
+            int documents = documentsSpilled + lengthVector.size();
+            if (documents == 0) {
+                System.out.println("No documents in " + filename);
+                Segments.delete(new File(directory));
+                segments.release(name);
+                return;
+            }
+            System.out.println("Indexed " + documents + " documents. Serialising...");
+            serialise();
+            if (!segments.add(name, postingsFormat)) {
+                System.out.println("The segments in " + segmentsDirectory + " have " + segments.postingsFormat + " postings (use -postings " + segments.postingsFormat + ")");
+                Segments.delete(new File(directory));
+                segments.release(name);
+                System.exit(1);
+            }
+            System.out.println("Added " + name + " (" + documents + " documents) to " + segmentsDirectory + ", " + segments.names.size() + " segments");
+            System.out.println(telemetry.summary());
+        } finally {
+            segments.close();
+        }
+    }
+
+    /*
+      openMerger()
+      ------------
+      Open the segmented index in the given directory as its merger, or exit if another merger has it open
+    */
+    static Segments openMerger(String directory) throws IOException {
+        if (!Segments.exists(directory)) {
+            System.out.println("There is no segmented index in " + directory);
+            System.exit(1);
+        }
+        Segments segments = Segments.open(directory);
+        if (!segments.lockMerges()) {
+            System.out.println("Another merger is merging " + directory);
+            System.exit(1);
+        }
+        return segments;
+    }
+
+    /*
+      mergeTiers()
+      ------------
+      Merge the segments of the segmented index in the given directory as the tiered merge policy says.  This is the
+      background merger:  run it beside the indexers adding batches (after each batch, or every so often), which go
+      on adding and publishing while it merges.
+    */
+    void mergeTiers(String segmentsDirectory) throws Exception {
+        Segments segments = openMerger(segmentsDirectory);
+        try {
+            int merges = segments.mergeTiers(mergeFactor);
+            System.out.println(segmentsDirectory + " has " + segments.names.size() + " segment" + (segments.names.size() == 1 ? "" : "s") + " after " + merges + " merge" + (merges == 1 ? "" : "s"));
+        } finally {
+            segments.close();
+        }
+    }
+
+    /*
+      mergeAll()
+      ----------
+      Merge all the segments of the segmented index in the given directory into one
+    */
+    void mergeAll(String segmentsDirectory) throws Exception {
+        Segments segments = openMerger(segmentsDirectory);
+        try {
+            if (segments.names.size() > 1)
+                segments.merge(new ArrayList<String>(segments.names));
+            segments.refresh();
+            System.out.println(segmentsDirectory + " has " + segments.names.size() + " segment" + (segments.names.size() == 1 ? "" : "s"));
+        } finally {
+            segments.close();
+        }
+    }
+
+    /*
+      engage()
+      --------
+      Simple indexer for TREC WSJ collection
+    */
+    public void engage(String args[]) throws Exception {
+        int threads = 1;
+
 		/*
-		  tell the user we've got to the end of parsing
+		  Parse the parameters, "-threads <n>", "-memory <megabytes>", "-postings <format>", the BM25 "-k1 <k1>"
+		  and "-b <b>", "-bits <8|16>" for quantised impacts, and "-progress <seconds>" between progress reports
+		  (0 for none), then the filename or "-reimpact <directory>".  "-segments <directory>" adds the file as a
+		  new segment of the segmented index in directory, "-merge <directory>" merges the segments there
+		  "-mergefactor <n>" of a tier at a time, and "-mergeall <directory>" merges them all into one.
 		*/
-        System.out.println("Indexed " + (docId + 1) + " documents. Serialising...");
-	
+        long progress = 5;
+        String reimpactFrom = null;
+        String segmentsDirectory = null;
+        String mergeDirectory = null;
+        boolean mergeAll = false;
+        int arg = 0;
+        try {
+            for (; arg < args.length - 1; arg += 2)
+                if (args[arg].equals("-threads"))
+                    threads = Integer.parseInt(args[arg + 1]);
+                else if (args[arg].equals("-memory"))
+                    memoryBudget = Long.parseLong(args[arg + 1]) * 1024 * 1024;
+                else if (args[arg].equals("-postings") && Arrays.asList(IndexWriter.RAW, IndexWriter.VBYTE, IndexWriter.IMPACT, IndexWriter.BLOCKED, IndexWriter.QUANTISED).contains(args[arg + 1]))
+                    postingsFormat = args[arg + 1];
+                else if (args[arg].equals("-k1"))
+                    k1 = Double.parseDouble(args[arg + 1]);
+                else if (args[arg].equals("-b"))
+                    b = Double.parseDouble(args[arg + 1]);
+                else if (args[arg].equals("-bits") && (args[arg + 1].equals("8") || args[arg + 1].equals("16")))
+                    quantisedBits = Integer.parseInt(args[arg + 1]);
+                else if (args[arg].equals("-progress"))
+                    progress = Long.parseLong(args[arg + 1]);
+                else if (args[arg].equals("-reimpact"))
+                    reimpactFrom = args[arg + 1];
+                else if (args[arg].equals("-segments"))
+                    segmentsDirectory = args[arg + 1];
+                else if (args[arg].equals("-mergefactor"))
+                    mergeFactor = Integer.parseInt(args[arg + 1]);
+                else if (args[arg].equals("-merge"))
+                    mergeDirectory = args[arg + 1];
+                else if (args[arg].equals("-mergeall")) {
+                    mergeDirectory = args[arg + 1];
+                    mergeAll = true;
+                }
+                else
+                    break;
+        } catch (NumberFormatException e) {
+            arg = -1;
+        }
+
 		/*
-		  Save the final document length
+		  Make sure we have one paramter, the filename (the memory bound is only supported on one thread)
 		*/
-        lengthVector.add(documentLength);
-
-			/*
-			  store the primary keys
-			*/
-        DataOutputStream docIdFile = new DataOutputStream(new BufferedOutputStream(new FileOutputStream("docids.bin")));
-        for (String primaryKey : docIds) {
-            primaryKey += "\n";
-            docIdFile.write(primaryKey.getBytes(), 0, primaryKey.length());
+        if (arg != (reimpactFrom == null && mergeDirectory == null ? args.length - 1 : args.length) || threads < 1 || memoryBudget < 0 || (threads != 1 && memoryBudget != 0) || progress < 0 || k1 < 0 || b < 0 || b > 1 || mergeFactor < 2) {
+            System.out.println("Usage: java " + Thread.currentThread().getStackTrace()[1].getClassName() + " [-threads <n> | -memory <megabytes>] [-postings <raw|vbyte|impact|blocked|quantised>] [-k1 <k1>] [-b <b>] [-bits <8|16>] [-progress <seconds>] <infile.xml>");
+            System.out.println("       java " + Thread.currentThread().getStackTrace()[1].getClassName() + " [-postings <format>] [-k1 <k1>] [-b <b>] [-bits <8|16>] -reimpact <index directory>");
+            System.out.println("       java " + Thread.currentThread().getStackTrace()[1].getClassName() + " [-threads <n> | -memory <megabytes>] [-postings <raw|vbyte>] [-progress <seconds>] [-mergefactor <n>] -segments <index directory> <infile.xml>");
+            System.out.println("       java " + Thread.currentThread().getStackTrace()[1].getClassName() + " [-mergefactor <n>] -merge <index directory>");
+            System.out.println("       java " + Thread.currentThread().getStackTrace()[1].getClassName() + " -mergeall <index directory>");
+            System.exit(0);
+        }
+        if (reimpactFrom != null) {
+            reimpact(reimpactFrom);
+            return;
+        }
+        if (mergeDirectory != null) {
+            if (mergeAll)
+                mergeAll(mergeDirectory);
+            else
+                mergeTiers(mergeDirectory);
+            return;
         }
+        String filename = args[arg];
+
+        // Add stop words implementation
+        StopWord stopWord = new StopWord("stopwords-en.txt");
 
-			/*
-			  serialise the in-memory index to disk
-			*/
-        BufferedOutputStream postingsFile = new BufferedOutputStream(new FileOutputStream("postings.bin"));
-        DataOutputStream postingsStream = new DataOutputStream(postingsFile);
-        DataOutputStream vocabFile = new DataOutputStream(new BufferedOutputStream(new FileOutputStream("vocab.bin")));
+        // Add porter stemmer
+        InPlacePorterStemmer porterStemmer = new InPlacePorterStemmer();
 
-        int[] linear = new int[docId * 2];
-        ByteBuffer byteBuffer = ByteBuffer.allocate(docId * 8);
-        byteBuffer.order(ByteOrder.nativeOrder());
-        IntBuffer intBuffer = byteBuffer.asIntBuffer();
+		/*
+		  Report the progress every so often (and over JMX)
+		*/
+        telemetry = new IndexTelemetry(new File(filename).length());
+        telemetry.register();
+        if (progress != 0)
+            telemetry.start(progress);
+
+        if (segmentsDirectory != null) {
+            addSegment(segmentsDirectory, filename, threads, stopWord, porterStemmer);
+            return;
+        }
 
-        for (HashMap.Entry<String, PostingsList> entry : vocab.entrySet()) {
-				/*
-				  write the postings list to one file
-				*/
-            int where = postingsStream.size();
+        indexFile(filename, threads, stopWord, porterStemmer);
+        telemetry.stop();
 
-            for (int which = 0; which < entry.getValue().size(); which++) {
-                linear[which * 2] = entry.getValue().get(which).d;
-                linear[which * 2 + 1] = entry.getValue().get(which).tf;
-            }
+		/*
+		  tell the user we've got to the end of parsing
+		*/
+        System.out.println("Indexed " + (documentsSpilled + lengthVector.size()) + " documents. Serialising...");
 
-            byteBuffer.rewind();
-            intBuffer.rewind();
-            intBuffer.put(linear, 0, entry.getValue().size() * 2);
-            postingsStream.write(byteBuffer.array(), 0, entry.getValue().size() * 8);
-	    
-				/*
-				  write the vocabulary to a second file (one byte length, string, '\0', 4 byte where, 4 byte size)
-				*/
-            vocabFile.write((byte) entry.getKey().length());
-            byte[] ntString = Arrays.copyOf(entry.getKey().getBytes(), (byte) entry.getKey().length() + 1);
-            vocabFile.write(ntString, 0, (byte) entry.getKey().length() + 1);
-            vocabFile.writeInt(toNativeEndian(where));
-            vocabFile.writeInt(toNativeEndian((int) postingsStream.size() - where));
-        }
-
-			/*
-			  store the document lengths
-			*/
-        DataOutputStream docLengthsFile = new DataOutputStream(new FileOutputStream("lengths.bin"));
-        for (int i = 0; i < lengthVector.size(); i++)
-            linear[i] = lengthVector.get(i);
-
-        intBuffer.rewind();
-        intBuffer.put(linear, 0, lengthVector.size());
-        docLengthsFile.write(byteBuffer.array(), 0, lengthVector.size() * 4);
-		   
-			/*
-			  clean up
-			*/
-        docIdFile.close();
-        postingsStream.close();
-        vocabFile.close();
-        docLengthsFile.close();
+        serialise();
+        System.out.println(telemetry.summary());
     }
 
     /*
@@ -279,8 +845,10 @@ class JASSjr_index {
     */
     public static void main(String args[]) {
         try {
-            args = new String[1];
-            args[0] = "travel.xml";
+            if (args.length == 0) {
+                args = new String[1];
+                args[0] = "travel.xml";
+            }
             JASSjr_index indexer = new JASSjr_index();
             indexer.engage(args);
         } catch (Exception e) {
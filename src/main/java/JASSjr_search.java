@@ -7,17 +7,33 @@
 
 import java.io.File;
 import java.util.List;
+import java.util.Locale;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.Scanner;
+import java.util.Collections;
 import java.nio.IntBuffer;
 import java.nio.ByteOrder;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.ByteBuffer;
+import java.io.IOException;
 import java.util.Comparator;
+import java.util.Properties;
 import java.io.FileInputStream;
+import java.io.EOFException;
+import java.io.BufferedWriter;
+import java.util.concurrent.Future;
+import java.util.concurrent.Callable;
 import java.io.RandomAccessFile;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.nio.charset.StandardCharsets;
 import java.util.StringTokenizer;
 
 class JASSjr_search {
@@ -25,20 +41,125 @@ class JASSjr_search {
       Constants
       ---------
     */
-    final double k1 = 0.9;      // BM25 k1 parameter
-    final double b = 0.4;        // BM25 b parameter
+    double k1 = 0.9;            // BM25 k1 parameter (or as recorded in the index)
+    double b = 0.4;              // BM25 b parameter (or as recorded in the index)
+    final double slack = 1 + 1e-9;  // score bounds are summed in a different order to scores so allow for rounding
 
     /*
       Class VocabEntry
       ----------------
+      A term's postings list in this index (or, of a segmented index, in this segment)
     */
     class VocabEntry {
         int where, size;        // where on the disk and how large (in bytes) is the postings list?
+        int base;               // the first document of the segment (of a segmented index)
+        int documentFrequency;  // documents with the term in all the segments (of a segmented index), else 0
 
         VocabEntry(int where, int size) {
             this.where = where;
             this.size = size;
         }
+
+        /*
+          index()
+          -------
+          The index (or segment) the postings list is in
+        */
+        JASSjr_search index() {
+            return JASSjr_search.this;
+        }
+
+        /*
+          key()
+          -----
+          The postings list's key in the caches:  the segment number then where it is in postings.bin
+        */
+        long key() {
+            return segmentNumber << 32 | (where & 0xFFFFFFFFL);
+        }
+    }
+
+    /*
+      POSTINGS_ORDER
+      --------------
+      Terms in the order of their postings lists in postings.bin, segment by segment (the order of the result cache
+      keys)
+    */
+    static final Comparator<VocabEntry> POSTINGS_ORDER = new Comparator<VocabEntry>() {
+        public int compare(VocabEntry a, VocabEntry b) {
+            return Long.compare(a.key(), b.key());
+        }
+    };
+
+    /*
+      Class Segment
+      -------------
+    */
+    class Segment {
+        ByteBuffer list;        // the postings list the segment is in
+        int impact;             // the impact of each document in the segment
+        int count;              // the number of documents in the segment
+        int at;                 // where the d-gaps start in list
+
+        Segment(ByteBuffer list, int impact, int count, int at) {
+            this.list = list;
+            this.impact = impact;
+            this.count = count;
+            this.at = at;
+        }
+    }
+
+    /*
+      Class Context
+      -------------
+      The scratch space of one query: the accumulators, the top-k heap, the analysis pipeline, and the terms of
+      the query.  Contexts are pooled (see acquire()) rather than per-thread so that there is one per running
+      query however many threads there are, and there are at most maxContexts of them (as each is the size of the
+      collection), so that a burst of queries on virtual threads waits for a context rather than making one each.
+    */
+    class Context {
+        Accumulators rsv;
+        TopK topK;
+        AnalysisPipeline pipeline;
+        ArrayList<VocabEntry> terms = new ArrayList<VocabEntry>();
+        long queryId;
+        long postingsInLists;           // postings in the lists of the blocked queries so far
+        long postingsDecoded;           // of which were decoded
+        long started;                   // when the query was parsed (with metrics)
+        long[] measured = new long[QueryMetrics.NAMES.length];     // the measures of the query (see QueryMetrics)
+
+        Context() throws Exception {
+            rsv = new Accumulators((int) documentsInCollection, integer);
+            topK = new TopK(k);
+            pipeline = new AnalysisPipeline(stopWord(), porterStemmer);
+        }
+    }
+
+    /*
+      Class Results
+      -------------
+      The results of a query: the top documents, best first, and their scores
+    */
+    class Results {
+        long queryId;
+        int[] documents;
+        double[] scores;
+        long nanoseconds;               // how long the search took
+        String run;                     // the results in TREC run format (batch mode)
+
+        Results(Context context, int found) {
+            queryId = context.queryId;
+            documents = Arrays.copyOf(context.topK.results(), found);
+            scores = new double[found];
+            for (int which = 0; which < found; which++)
+                scores[which] = context.rsv.get(documents[which]);
+        }
+
+        Results(Results results, long queryId) {
+            this.queryId = queryId;
+            documents = results.documents;          // shared, neither is changed once made
+            scores = results.scores;
+        }
     }
 
     /*
@@ -49,81 +170,186 @@ class JASSjr_search {
     ByteBuffer readEntireFile(String filename) throws Exception {
         File file = new File(filename);
         FileInputStream stream = new FileInputStream(file);
-        ByteBuffer bytes = ByteBuffer.allocate((int) file.length());
-        if (stream.read(bytes.array()) == -1)
-            return null;
-        else
-            return bytes;
+        try {
+            ByteBuffer bytes = ByteBuffer.allocate((int) file.length());
+            if (stream.read(bytes.array()) == -1)
+                return null;
+            else
+                return bytes;
+        } finally {
+            stream.close();
+        }
     }
 
-	/*
-	  CompareRsv()
-	  ------------
-	  Callback from sort for two rsv values.  Tie break on the document ID.
-	*/
+    /*
+      map()
+      -----
+      Memory map the given index file (it is unmapped by close())
+    */
+    MappedFile map(String filename) throws Exception {
+        MappedFile file = new MappedFile(path(filename));
+        mappings.add(file);
+        return file;
+    }
 
-    class CompareRsv implements Comparator<Integer> {
-        final double[] rsv;
+    /*
+      The index
+      ---------
+    */
+    IntBuffer lengthVector;                 // the length of each document
+    double documentsInCollection;
+    double averageDocumentLength;
+    List<String> primaryKey;                // the external document identifiers
+    HashMap<String, VocabEntry> dictionary; // the vocab (for indexes without a sorted vocabulary)
+    ByteBuffer vocab;                       // the sorted vocabulary, vocab.bin
+    IntBuffer vocabOffsets;                 // where each term starts in vocab
+    boolean vbyte;                          // are the postings variable-byte encoded?
+    boolean impactOrdered;                  // are the postings impact ordered segments?
+    boolean blocked;                        // are the postings in blocks with block-max scores?
+    boolean quantised;                      // are the postings <d-gap,impact> pairs (rather than <d-gap,tf>)?
+    FileChannel postingsFile;               // the postings when reading from disk
+    MappedFile postingsMap;                 // the postings when memory mapped
+    PostingsCache postingsCache;            // the most recently read postings (when reading from disk), or null
+    ResultCache resultCache;                // the results of the most recent queries, or null
+    boolean mapped;                         // is the index memory mapped?
+    List<MappedFile> mappings = new ArrayList<MappedFile>();       // the index files mapped (to unmap on close())
+    AtomicInteger references = new AtomicInteger(1);            // its owner's, and one per user (see retain())
 
-        CompareRsv(double[] rsv) {
-            this.rsv = rsv;
-        }
+    String directory = ".";                 // where the index is
 
-        public int compare(Integer a, Integer b) {
-            return rsv[a] < rsv[b] ? 1 : rsv[a] == rsv[b] ? a < b ? 1 : a == b ? 0 : -1 : -1;
-        }
+    /*
+      A segmented index (see Segments)
+      --------------------------------
+      Each segment is loaded into a search engine of its own, whose vocabulary and postings are used, but the
+      documents are numbered and scored across all the segments (so with the collection statistics of them all).
+    */
+    Segments manifest;                      // the segments, or null if the index isn't segmented
+    List<JASSjr_search> segments;           // the search engine of each segment
+    int[] segmentBase;                      // the first document of each segment
+    long segmentNumber;                     // of this segment (to tell its postings apart from others' in the caches)
+
+    /*
+      Search options (set before searching)
+      -------------------------------------
+    */
+    int k = 10;                             // the number of documents to find
+    long budget = Long.MAX_VALUE;           // postings to process in an impact ordered index
+    boolean exhaustive;                     // score every posting of a blocked index (rather than pruning)
+    boolean integer;                        // integer accumulators (for impact ordered and quantised indexes)
+    QueryMetrics metrics;                   // where to record the time and work of each query, or null not to
+    boolean debug;                          // report the measures of each query (with metrics) on stderr
+
+    /*
+      The search contexts
+      -------------------
+    */
+    StopWord stopWord;                      // shared by the analysis pipelines (it is read-only)
+    InPlacePorterStemmer porterStemmer = new InPlacePorterStemmer();
+    ConcurrentLinkedQueue<Context> idle = new ConcurrentLinkedQueue<Context>();
+    List<Context> contexts = Collections.synchronizedList(new ArrayList<Context>());
+    int maxContexts = Runtime.getRuntime().availableProcessors();     // queries running at once (others wait)
+    Semaphore free = new Semaphore(maxContexts);                        // contexts that may still be taken
+
+    /*
+      path()
+      ------
+      The path of the given index file
+    */
+    String path(String filename) {
+        return new File(directory, filename).getPath();
     }
 
     /*
-      engage()
-      --------
-      Simple search engine ranking on BM25.
+      loadIndex()
+      -----------
+      Load the index from directory.  If mapped then the index files are memory mapped (and the
+      postings are scored directly from the mapping) rather than read onto the heap.
     */
-    public void engage(String args[]) throws Exception {
+    void loadIndex(boolean mapped) throws Exception {
+        if (resultCache != null && lengthVector != null)
+            resultCache.invalidate();           // an index was loaded before, so the results may have changed
+        this.mapped = mapped;
+        if (Segments.exists(directory)) {
+            loadSegments(Segments.read(directory), new HashMap<String, JASSjr_search>());
+            return;
+        }
+
 		/*
 		  Read the document lengths
 		*/
-        ByteBuffer lengthsAsBytes = readEntireFile("lengths.bin");
-        if (lengthsAsBytes == null) {
-            System.out.println("Could not find an index in the current directory");
-            System.exit(1);
+        if (mapped)
+            lengthVector = map("lengths.bin").whole().asIntBuffer();
+        else {
+            ByteBuffer lengthsAsBytes = readEntireFile(path("lengths.bin"));
+            if (lengthsAsBytes == null) {
+                System.out.println("Could not find an index in " + directory);
+                System.exit(1);
+            }
+            lengthsAsBytes.order(ByteOrder.nativeOrder());
+            IntBuffer lengthsAsIntegers = lengthsAsBytes.asIntBuffer();
+            int[] lengths = new int[lengthsAsBytes.capacity() / 4];
+            lengthsAsIntegers.get(lengths);
+            lengthVector = IntBuffer.wrap(lengths);
         }
-        lengthsAsBytes.order(ByteOrder.nativeOrder());
-        IntBuffer lengthsAsIntegers = lengthsAsBytes.asIntBuffer();
-        int[] lengthVector = new int[lengthsAsBytes.capacity() / 4];
-        lengthsAsIntegers.get(lengthVector);
 
 		/*
 		  Compute the average document length for BM25
 		*/
-        double documentsInCollection = lengthVector.length;
-        double averageDocumentLength = 0;
-        for (int which : lengthVector)
-            averageDocumentLength += which;
+        documentsInCollection = lengthVector.capacity();
+        averageDocumentLength = 0;
+        for (int which = 0; which < lengthVector.capacity(); which++)
+            averageDocumentLength += lengthVector.get(which);
         averageDocumentLength /= documentsInCollection;
 
 		/*
 		  Read the primary keys
 		*/
-        List<String> primaryKey = Files.readAllLines(Paths.get("docids.bin"));
+        primaryKey = Files.readAllLines(Paths.get(path("docids.bin")));
 
 		/*
-		  Open the postings list file
+		  Read the index format (indexes without a format.bin, such as those from the C++ indexer, are raw)
 		*/
-        RandomAccessFile postingsFile = new RandomAccessFile("postings.bin", "r");
-        
+        Properties format = new Properties();
+        if (new File(path("format.bin")).exists()) {
+            FileInputStream formatFile = new FileInputStream(path("format.bin"));
+            format.load(formatFile);
+            formatFile.close();
+        }
+        String postings = format.getProperty("postings", "raw");
+        quantised = postings.equals("quantised");
+        vbyte = postings.equals("vbyte") || quantised;
+        impactOrdered = postings.equals("impact");
+        blocked = postings.equals("blocked");
+        k1 = Double.parseDouble(format.getProperty("k1", Double.toString(k1)));
+        b = Double.parseDouble(format.getProperty("b", Double.toString(b)));
+
 		/*
-		  Build the vocabulary in memory
+		  Open (or map) the postings list file
 		*/
-        HashMap<String, VocabEntry> dictionary = new HashMap<String, VocabEntry>(); // the vocab
-        ByteBuffer vocabAsBytes = readEntireFile("vocab.bin");
+        if (mapped)
+            postingsMap = map("postings.bin");
+        else
+            postingsFile = new RandomAccessFile(path("postings.bin"), "r").getChannel();
+
+		/*
+		  If the vocabulary is sorted (has an offset table) then map it and binary search it, otherwise
+		  build the vocabulary in memory
+		*/
+        if (new File(path("vocaboffsets.bin")).exists()) {
+            vocab = map("vocab.bin").whole();
+            vocabOffsets = map("vocaboffsets.bin").whole().asIntBuffer();
+            return;
+        }
+
+        dictionary = new HashMap<String, VocabEntry>();
+        ByteBuffer vocabAsBytes = mapped ? map("vocab.bin").whole().duplicate() : readEntireFile(path("vocab.bin"));
         vocabAsBytes.order(ByteOrder.nativeOrder());
 
         while (vocabAsBytes.position() < vocabAsBytes.capacity()) {
-            byte stringLength = vocabAsBytes.get();
+            int stringLength = vocabAsBytes.get() & 0xFF;
             byte[] termAsBytes = new byte[stringLength];
             vocabAsBytes.get(termAsBytes);
-            String term = new String(termAsBytes);
+            String term = new String(termAsBytes, StandardCharsets.UTF_8);
             byte zero = vocabAsBytes.get();      // read the '\0' string terminator
 
             int where = vocabAsBytes.getInt();
@@ -131,116 +357,1121 @@ class JASSjr_search {
 
             dictionary.put(term, new VocabEntry(where, size));
         }
-        
+    }
+
+    /*
+      loadSegments()
+      --------------
+      Load the segments of a segmented index (reusing any already loaded, by directory, in loaded), and compute the
+      collection statistics over them all
+    */
+    void loadSegments(Segments manifest, HashMap<String, JASSjr_search> loaded) throws Exception {
+        if (manifest.names.isEmpty()) {
+            System.out.println("There are no segments in " + directory);
+            System.exit(1);
+        }
+        segments = new ArrayList<JASSjr_search>();
+        segmentBase = new int[manifest.names.size()];
+        int documents = 0;
+        for (String name : manifest.names) {
+            JASSjr_search segment = loaded.get(manifest.path(name));
+            if (segment == null) {
+                segment = new JASSjr_search();
+                segment.directory = manifest.path(name);
+                segment.segmentNumber = Segments.number(name);
+                segment.postingsCache = postingsCache;
+                try {
+                    segment.loadIndex(mapped);
+                } catch (Exception e) {
+                    segment.close();
+                    throw e;
+                }
+            } else
+                segment.retain();           // it is shared with the engine it was loaded by
+            segmentBase[segments.size()] = documents;
+            documents += segment.lengthVector.capacity();
+            segments.add(segment);
+        }
+
+		/*
+		  Number the documents across the segments, and compute the average document length for BM25
+		*/
+        int[] lengths = new int[documents];
+        primaryKey = new ArrayList<String>(documents);
+        for (int which = 0; which < segments.size(); which++) {
+            IntBuffer segmentLengths = segments.get(which).lengthVector.duplicate();
+            segmentLengths.rewind();
+            segmentLengths.get(lengths, segmentBase[which], segmentLengths.capacity());
+            primaryKey.addAll(segments.get(which).primaryKey);
+        }
+        lengthVector = IntBuffer.wrap(lengths);
+        documentsInCollection = documents;
+        averageDocumentLength = 0;
+        for (int which = 0; which < lengths.length; which++)
+            averageDocumentLength += lengths[which];
+        averageDocumentLength /= documentsInCollection;
+
+        vbyte = manifest.postingsFormat.equals(IndexWriter.VBYTE);
+        this.manifest = manifest;
+    }
+
+    /*
+      reload()
+      --------
+      If the segmented index has changed (segments have been added or merged) then a search engine on it as it is
+      now, with the same options, caches and metrics as this one, otherwise null.  The segments still in the index
+      are shared with this engine (they never change, and their postings stay in the postings cache), so only the
+      new ones are loaded.  This engine can go on searching meanwhile.  The result cache is invalidated as the
+      collection statistics (so every score) have changed, and this engine's results are never mistaken for the new
+      one's as the cache keys start with the generation of the manifest.
+    */
+    JASSjr_search reload() throws Exception {
+        Segments latest = Segments.read(directory);
+        if (manifest == null || latest.generation == manifest.generation)
+            return null;
+        JASSjr_search engine = new JASSjr_search();
+        engine.directory = directory;
+        engine.mapped = mapped;
+        engine.k = k;
+        engine.budget = budget;
+        engine.exhaustive = exhaustive;
+        engine.integer = integer;
+        engine.metrics = metrics;
+        engine.debug = debug;
+        engine.stopWord = stopWord();
+        engine.postingsCache = postingsCache;
+        engine.resultCache = resultCache;
+        engine.limitContexts(maxContexts);
+        HashMap<String, JASSjr_search> loaded = new HashMap<String, JASSjr_search>();
+        for (JASSjr_search segment : segments)
+            loaded.put(segment.directory, segment);
+        try {
+            engine.loadSegments(latest, loaded);
+        } catch (Exception e) {
+            engine.close();             // giving back the segments it had loaded
+            throw e;
+        }
+        if (resultCache != null)
+            resultCache.invalidate();
+        return engine;
+    }
+
+    /*
+      retain()
+      --------
+      Take a reference to the engine so that it isn't closed while in use, and give it back with dispose().  Return
+      false if the engine has already been closed.
+    */
+    boolean retain() {
+        for (int count = references.get(); count > 0; count = references.get())
+            if (references.compareAndSet(count, count + 1))
+                return true;
+        return false;
+    }
+
+    /*
+      dispose()
+      ---------
+      Give back a reference to the engine, closing it when there are none left
+    */
+    void dispose() throws IOException {
+        if (references.decrementAndGet() == 0)
+            close();
+    }
+
+    /*
+      close()
+      -------
+      Close and unmap the index files, and give back the references to the segments (closing those no other engine
+      uses).  Nothing may search the engine afterwards.
+    */
+    void close() throws IOException {
+        references.set(0);
+        if (segments != null)
+            for (JASSjr_search segment : segments)
+                segment.dispose();
+        if (postingsFile != null)
+            postingsFile.close();
+        for (MappedFile mapping : mappings)
+            mapping.close();
+        mappings.clear();
+        idle.clear();                   // the contexts (the size of the collection) go with the engine
+        contexts.clear();
+        postingsFile = null;
+        postingsMap = null;
+        vocab = null;
+        vocabOffsets = null;
+        dictionary = null;
+    }
+
+    /*
+      documentFrequency()
+      -------------------
+      The number of documents in the term's postings list (of a raw or vbyte index)
+    */
+    int documentFrequency(VocabEntry termDetails) throws Exception {
+        if (!vbyte)
+            return termDetails.size / 8;
+        if (postingsMap != null)
+            return readVByte(postingsList(termDetails));
+        ByteBuffer header = ByteBuffer.allocate(Math.min(5, termDetails.size));      // just the count, not the list
+        while (header.hasRemaining())
+            if (postingsFile.read(header, (termDetails.where & 0xFFFFFFFFL) + header.position()) < 0)
+                throw new EOFException("postings.bin is truncated");
+        header.flip();
+        return readVByte(header);
+    }
+
+    /*
+      compareTerm()
+      -------------
+      Compare the term at offset at in the vocabulary to key (as unsigned bytes, the order of the vocabulary)
+    */
+    int compareTerm(int at, byte[] key) {
+        int length = vocab.get(at++) & 0xFF;
+        for (int which = 0; which < length && which < key.length; which++) {
+            int cmp = (vocab.get(at + which) & 0xFF) - (key[which] & 0xFF);
+            if (cmp != 0)
+                return cmp;
+        }
+        return length - key.length;
+    }
+
+    /*
+      lookup()
+      --------
+      Find the term (truncated as the indexer truncates it) in the vocabulary, return null if it isn't there
+    */
+    VocabEntry lookup(String term) {
+        term = IndexWriter.truncate(term);
+        if (dictionary != null)
+            return dictionary.get(term);
+
 		/*
-		  Allocate buffers
+		  Binary search the sorted vocabulary
 		*/
-        int maxDocs = (int) documentsInCollection;
-        double[] rsv = new double[maxDocs];          // array of rsv values
+        byte[] key = term.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = vocabOffsets.capacity() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int at = vocabOffsets.get(middle);
+            int cmp = compareTerm(at, key);
+            if (cmp < 0)
+                low = middle + 1;
+            else if (cmp > 0)
+                high = middle - 1;
+            else {
+                at += key.length + 2;       // skip the length, the string, and the '\0'
+                return new VocabEntry(vocab.getInt(at), vocab.getInt(at + 4));
+            }
+        }
+        return null;
+    }
+
+    /*
+      lookup()
+      --------
+      Add the term's entries to terms (of a segmented index, one for each segment it is in), return whether it is in
+      the vocabulary
+    */
+    boolean lookup(String term, List<VocabEntry> terms) throws Exception {
+        if (segments == null) {
+            VocabEntry termDetails = lookup(term);
+            if (termDetails != null)
+                terms.add(termDetails);
+            return termDetails != null;
+        }
+
+        int first = terms.size();
+        int documentFrequency = 0;
+        for (int which = 0; which < segments.size(); which++) {
+            JASSjr_search segment = segments.get(which);
+            VocabEntry termDetails = segment.lookup(term);      // a new entry (segments have sorted vocabularies)
+            if (termDetails != null) {
+                termDetails.base = segmentBase[which];
+                documentFrequency += segment.documentFrequency(termDetails);
+                terms.add(termDetails);
+            }
+        }
+        for (int which = first; which < terms.size(); which++)
+            terms.get(which).documentFrequency = documentFrequency;
+        return terms.size() != first;
+    }
+
+    /*
+      postingsList()
+      --------------
+      Find the postings list, either in the mapped file, or in the postings cache, or by reading it.  The list is
+      the bytes from position() to limit() of the returned (native byte order) buffer.
+    */
+    ByteBuffer postingsList(VocabEntry termDetails) throws Exception {
+        return postingsList(termDetails, (long[]) null);
+    }
+
+    /*
+      postingsList()
+      --------------
+      Find the postings list, adding the bytes read from postings.bin (not from the memory map or the postings cache)
+      to the query's measures (if not null)
+    */
+    ByteBuffer postingsList(VocabEntry termDetails, long[] measured) throws Exception {
+        if (termDetails.index() != this)
+            return termDetails.index().postingsList(termDetails, measured);      // it is in a segment
+        ByteBuffer currentList;
+        int at;
+        long where = termDetails.where & 0xFFFFFFFFL;
+        if (postingsMap != null) {
+            currentList = postingsMap.chunk(where, termDetails.size);
+            at = postingsMap.offset(where);
+            if (currentList == null) {
+                currentList = postingsMap.copy(where, termDetails.size);
+                at = 0;
+            }
+            currentList = currentList.duplicate();
+        } else {
+            currentList = postingsCache == null ? null : postingsCache.get(termDetails.key());
+            if (currentList == null) {
+                currentList = ByteBuffer.allocate(termDetails.size);
+                while (currentList.hasRemaining())          // a positional read, so threads can share the file
+                    if (postingsFile.read(currentList, where + currentList.position()) < 0)
+                        throw new EOFException("postings.bin is truncated");
+                if (measured != null)
+                    measured[QueryMetrics.BYTES] += termDetails.size;
+                if (postingsCache != null) {
+                    postingsCache.put(termDetails.key(), currentList);
+                    currentList = currentList.duplicate();
+                }
+            }
+            at = 0;
+        }
+        currentList.order(ByteOrder.nativeOrder());
+        currentList.limit(at + termDetails.size);
+        currentList.position(at);
+        return currentList;
+    }
+
+    /*
+      postingsList()
+      --------------
+      The postings list of a term of the context's query, counting the bytes read and (with metrics) timing it
+    */
+    ByteBuffer postingsList(VocabEntry termDetails, Context context) throws Exception {
+        if (metrics == null)
+            return postingsList(termDetails, context.measured);
+        long start = System.nanoTime();
+        ByteBuffer list = postingsList(termDetails, context.measured);
+        context.measured[QueryMetrics.READ] += System.nanoTime() - start;
+        return list;
+    }
+
+    /*
+      scoreTerm()
+      -----------
+      Add the BM25 contribution of the term to each document in its postings list into the accumulators, return
+      the number of postings scored.
+    */
+    int scoreTerm(VocabEntry termDetails, Accumulators rsv) throws Exception {
+        return scoreTerm(termDetails, postingsList(termDetails), rsv);
+    }
+
+    int scoreTerm(VocabEntry termDetails, ByteBuffer currentList, Accumulators rsv) throws Exception {
+        int at = currentList.position();
+        int end = currentList.limit();
+        int postings = termDetails.size / 8;
 
 		/*
-		  Set up the rsv pointers
+		  A blocked list is decoded a block at a time
 		*/
-        Integer[] rsvPointers = new Integer[maxDocs];    // pointers to each member of rsv[] so that we can sort
-        for (int index = 0; index < rsvPointers.length; index++)
-            rsvPointers[index] = index;
+        if (blocked) {
+            BlockCursor cursor = new BlockCursor(currentList);
+            if (documentsInCollection == cursor.postings)
+                return 0;
+            double idf = Math.log(documentsInCollection / cursor.postings);
+            for (int d = cursor.next(); d != BlockCursor.NO_MORE_DOCS; d = cursor.next()) {
+                int tf = cursor.tf();
+                rsv.add(d, idf * ((tf * (k1 + 1)) / (tf + k1 * (1 - b + b * (lengthVector.get(d) / averageDocumentLength)))));
+            }
+            return cursor.postings;
+        }
 
 		/*
-		  Search (one query per line)
+		  A variable-byte list starts with the number of postings in the list
 		*/
-        System.out.print("Please enter term to search:");
-        Scanner stdin = new Scanner(System.in);
+        if (vbyte) {
+            postings = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte current = currentList.get(at++);
+                postings |= (current & 0x7F) << shift;
+                if (current >= 0)
+                    break;
+            }
+        }
 
-        // Add stop words implementation
-        StopWord stopWord = new StopWord("stopwords-en.txt");
+		/*
+		  Compute the IDF component of BM25 as log(N/n) (n in all the segments of a segmented index).
+		  if IDF == 0 then don't process this postings list as the BM25 contribution of this term will be zero.
+		*/
+        int documentFrequency = termDetails.documentFrequency == 0 ? postings : termDetails.documentFrequency;
+        if (documentsInCollection == documentFrequency)
+            return 0;
+        double idf = Math.log(documentsInCollection / documentFrequency);
 
-        // Add porter stemmer
-        PorterStemmer porterStemmer = new PorterStemmer();
-        while (stdin.hasNextLine()) {
+		/*
+		  Process the postings list by simply adding the BM25 component for this document into the accumulators array
+		*/
+        if (quantised) {
 			/*
-			  Zero the accumulator array.
+			  Decode the <d-gap,impact> pairs, the scores were computed (and quantised) when indexing
 			*/
-            Arrays.fill(rsv, 0);
-            boolean firstTerm = true;
-            long queryId = 0;
-            StringTokenizer tokenizer = new StringTokenizer(stdin.nextLine());
-            while (tokenizer.hasMoreTokens()) {
-                String token = tokenizer.nextToken();
-
-                // Implement stop words filter
-                if (stopWord.isStopWord(token)) {
-                    System.out.println("Stop word found! - skipping the stop word : '" + token + "'");
-                    continue;
+            int d = termDetails.base - 1;
+            while (at < end) {
+                int value = 0;
+                byte current;
+                for (int shift = 0; ; shift += 7) {
+                    current = currentList.get(at++);
+                    value |= (current & 0x7F) << shift;
+                    if (current >= 0)
+                        break;
+                }
+                d += value;
+                int impact = currentList.get(at++);
+                if (impact < 0) {
+                    impact &= 0x7F;
+                    for (int shift = 7; ; shift += 7) {
+                        current = currentList.get(at++);
+                        impact |= (current & 0x7F) << shift;
+                        if (current >= 0)
+                            break;
+                    }
                 }
+                rsv.add(d, impact);
+            }
+        } else if (vbyte) {
+			/*
+			  Decode the <d-gap,tf> pairs straight from the bytes of the list (numbered from the segment's first)
+			*/
+            int d = termDetails.base - 1;
+            while (at < end) {
+                int value = 0;
+                byte current;
+                for (int shift = 0; ; shift += 7) {
+                    current = currentList.get(at++);
+                    value |= (current & 0x7F) << shift;
+                    if (current >= 0)
+                        break;
+                }
+                d += value;
+                int tf = currentList.get(at++);
+                if (tf < 0) {
+                    tf &= 0x7F;
+                    for (int shift = 7; ; shift += 7) {
+                        current = currentList.get(at++);
+                        tf |= (current & 0x7F) << shift;
+                        if (current >= 0)
+                            break;
+                    }
+                }
+                rsv.add(d, idf * ((tf * (k1 + 1)) / (tf + k1 * (1 - b + b * (lengthVector.get(d) / averageDocumentLength)))));
+            }
+        } else
+            for (; at < end; at += 8) {
+                int d = termDetails.base + currentList.getInt(at);
+                int tf = currentList.getInt(at + 4);
+                rsv.add(d, idf * ((tf * (k1 + 1)) / (tf + k1 * (1 - b + b * (lengthVector.get(d) / averageDocumentLength)))));
+            }
+        return postings;
+    }
+
+    /*
+      readVByte()
+      -----------
+      Decode the variable-byte encoded integer at the position of list (and move past it)
+    */
+    static int readVByte(ByteBuffer list) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte current = list.get();
+            value |= (current & 0x7F) << shift;
+            if (current >= 0)
+                return value;
+        }
+    }
 
-                // Add Porter Stemmer
-                token = porterStemmer.stemWord(token);
-                
-				/*
-				  If the first token is a number then assume a TREC query number, and skip it
-				*/
-                if (firstTerm && Character.isDigit(token.charAt(0))) {
-                    queryId = Long.parseLong(token);
-                    firstTerm = false;
+    /*
+      scoreImpacts()
+      --------------
+      Score-at-a-time evaluation of the terms of an impact ordered index: the segments of all the terms are
+      processed from the highest impact to the lowest, adding the impact to the accumulator of each document in the
+      segment.  Processing stops before the next segment once at least budget postings have been processed, so the
+      most important postings are always scored first.  Return the number of postings processed.
+    */
+    long scoreImpacts(List<VocabEntry> terms, Context context, long budget) throws Exception {
+        Accumulators rsv = context.rsv;
+
+		/*
+		  Find the segments of each of the terms
+		*/
+        ArrayList<Segment> segments = new ArrayList<Segment>();
+        for (VocabEntry termDetails : terms) {
+            ByteBuffer list = postingsList(termDetails, context);
+            int count = readVByte(list);
+            for (int which = 0; which < count; which++) {
+                int impact = readVByte(list);
+                int documents = readVByte(list);
+                segments.add(new Segment(list, impact, documents, list.position()));
+                for (int skipped = 0; skipped < documents; )
+                    if (list.get() >= 0)
+                        skipped++;
+            }
+        }
+
+		/*
+		  Process the segments, highest impact first (a stable sort, so ties are in query order)
+		*/
+        Collections.sort(segments, new Comparator<Segment>() {
+            public int compare(Segment a, Segment b) {
+                return b.impact - a.impact;
+            }
+        });
+        long processed = 0;
+        for (Segment segment : segments) {
+            if (processed >= budget)
+                break;
+            ByteBuffer list = segment.list;
+            list.position(segment.at);
+            int d = -1;
+            for (int which = 0; which < segment.count; which++) {
+                d += readVByte(list);
+                rsv.add(d, segment.impact);
+            }
+            processed += segment.count;
+        }
+        return processed;
+    }
+
+    /*
+      searchBlockMax()
+      ----------------
+      Document-at-a-time evaluation of a blocked index with MaxScore and block-max pruning, return the number of
+      documents found by topK.  The lists are ordered by their largest score and, once the top k is full, the
+      lists whose scores together can't reach the k-th score are non-essential: only documents in the essential
+      lists are candidates.  Runs of candidates are skipped (without decoding) where the largest scores of the
+      blocks that might hold them fall below the k-th score, and a candidate is dropped as soon as its score so
+      far plus the largest scores in the non-essential blocks that might hold it falls below the k-th score.  A
+      document that ties the k-th score ranks above it (it has a higher docid) so is never dropped, and scores are
+      summed in query order, so the results are exactly those of scoring every posting.
+    */
+    int searchBlockMax(List<VocabEntry> terms, Context context) throws Exception {
+        Accumulators rsv = context.rsv;
+        TopK topK = context.topK;
+
+		/*
+		  Open a cursor on each list, in query order, dropping lists that score 0 (as scoreTerm() does)
+		*/
+        BlockCursor[] cursors = new BlockCursor[terms.size()];
+        double[] idf = new double[terms.size()];
+        int lists = 0;
+        for (VocabEntry termDetails : terms) {
+            BlockCursor cursor = new BlockCursor(postingsList(termDetails, context));
+            if (documentsInCollection == cursor.postings)
+                continue;
+            idf[lists] = Math.log(documentsInCollection / cursor.postings);
+            cursors[lists++] = cursor;
+            context.postingsInLists += cursor.postings;
+            cursor.next();
+        }
+
+		/*
+		  Order the lists by increasing largest score, bound[which] is the largest possible score of a document
+		  in only the lists order[0] .. order[which]
+		*/
+        int[] order = new int[lists];
+        for (int which = 0; which < lists; which++) {
+            int at = which;
+            for (; at > 0 && cursors[order[at - 1]].maxScore > cursors[which].maxScore; at--)
+                order[at] = order[at - 1];
+            order[at] = which;
+        }
+        double[] bound = new double[lists];
+        for (int which = 0; which < lists; which++)
+            bound[which] = (which == 0 ? 0 : bound[which - 1]) + cursors[order[which]].maxScore;
+
+        double[] contribution = new double[lists];
+        double[] blockBound = new double[lists];
+        double threshold = 0;
+        int essential = 0;          // order[essential] .. order[lists - 1] are the essential lists
+        long scored = 0;
+        topK.reset(rsv);
+        while (essential < lists) {
+			/*
+			  The next candidate is the lowest document in an essential list
+			*/
+            int d = BlockCursor.NO_MORE_DOCS;
+            for (int which = essential; which < lists; which++)
+                d = Math.min(d, cursors[order[which]].doc);
+            if (d == BlockCursor.NO_MORE_DOCS)
+                break;
+
+			/*
+			  Each list's block that might hold d covers every document from d to upTo.  If together the largest
+			  scores in those blocks can't make the top k then skip past them all
+			*/
+            if (threshold > 0) {
+                double blocksBound = 0;
+                int upTo = BlockCursor.NO_MORE_DOCS;
+                for (int which = 0; which < lists; which++) {
+                    BlockCursor cursor = cursors[which];
+                    if (cursor.shallowAdvance(d)) {
+                        blocksBound += cursor.currentBlockMax();
+                        upTo = Math.min(upTo, cursor.lastDoc[cursor.block]);
+                    }
+                }
+                if (blocksBound * slack < threshold) {
+                    for (int which = essential; which < lists; which++)
+                        cursors[order[which]].advance(upTo + 1);
                     continue;
                 }
-                firstTerm = false;
+            }
+
+			/*
+			  Score it in the essential lists
+			*/
+            Arrays.fill(contribution, 0);
+            double score = 0;
+            for (int which = essential; which < lists; which++) {
+                BlockCursor cursor = cursors[order[which]];
+                if (cursor.doc == d) {
+                    int tf = cursor.tf();
+                    scored++;
+                    score += contribution[order[which]] = idf[order[which]] * ((tf * (k1 + 1)) / (tf + k1 * (1 - b + b * (lengthVector.get(d) / averageDocumentLength))));
+                    cursor.next();
+                }
+            }
 
-				/*
-				  Does the term exist in the collection?
-				*/
-                VocabEntry termDetails;
-                if ((termDetails = dictionary.get(token)) != null) {
-					/*
-					  Seek and read the postings list
-					*/
-                    byte[] currentList = new byte[termDetails.size];
-                    postingsFile.seek(termDetails.where);
-                    postingsFile.read(currentList);
-                    ByteBuffer currentListAsBytes = ByteBuffer.wrap(currentList);
-                    currentListAsBytes.order(ByteOrder.nativeOrder());
-                    int postings = currentListAsBytes.capacity() / 8;
-
-					/*
-					  Compute the IDF component of BM25 as log(N/n).
-					  if IDF == 0 then don't process this postings list as the BM25 contribution of this term will be zero.
-					*/
-                    if (documentsInCollection != postings) {
-                        double idf = Math.log(documentsInCollection / postings);
-
-						/*
-						  Process the postings list by simply adding the BM25 component for this document into the accumulators array
-						*/
-                        while (currentListAsBytes.position() < currentListAsBytes.capacity()) {
-                            int d = currentListAsBytes.getInt();
-                            int tf = currentListAsBytes.getInt();
-                            rsv[d] += idf * ((tf * (k1 + 1)) / (tf + k1 * (1 - b + b * (lengthVector[d] / averageDocumentLength))));
+			/*
+			  Then in the non-essential lists, best first, while it can still make the top k
+			*/
+            if (essential > 0) {
+                if ((score + bound[essential - 1]) * slack < threshold)
+                    continue;
+                double remaining = 0;
+                for (int which = 0; which < essential; which++) {
+                    BlockCursor cursor = cursors[order[which]];
+                    remaining += blockBound[which] = cursor.shallowAdvance(d) ? cursor.currentBlockMax() : 0;
+                }
+                boolean dropped = false;
+                for (int which = essential - 1; which >= 0 && !dropped; which--) {
+                    if ((score + remaining) * slack < threshold)
+                        dropped = true;
+                    else {
+                        remaining -= blockBound[which];
+                        if (blockBound[which] != 0) {
+                            BlockCursor cursor = cursors[order[which]];
+                            if (cursor.advance(d) == d) {
+                                int tf = cursor.tf();
+                                scored++;
+                                score += contribution[order[which]] = idf[order[which]] * ((tf * (k1 + 1)) / (tf + k1 * (1 - b + b * (lengthVector.get(d) / averageDocumentLength))));
+                            }
                         }
                     }
                 }
+                if (dropped)
+                    continue;
+            }
+
+			/*
+			  Add the contributions in query order (as scoreTerm() would) and offer the document to the top k
+			*/
+            double rsvD = 0;
+            for (int which = 0; which < lists; which++)
+                rsvD += contribution[which];
+            if (rsvD > 0) {
+                rsv.set(d, rsvD);
+                topK.add(d);
+                if (topK.full()) {
+                    threshold = rsv.value(topK.heap[0]);
+                    while (essential < lists && bound[essential] * slack < threshold)
+                        essential++;
+                }
+            }
+        }
+
+        for (int which = 0; which < lists; which++)
+            context.postingsDecoded += cursors[which].decoded;
+        context.measured[QueryMetrics.POSTINGS] += scored;
+        if (metrics == null)
+            return topK.sort();
+        long start = System.nanoTime();
+        int found = topK.sort();
+        context.measured[QueryMetrics.SELECT] += System.nanoTime() - start;
+        return found;
+    }
+
+    /*
+      search()
+      --------
+      Evaluate the query terms into the context's accumulators and find the top documents with its top-k heap,
+      return the number found (see TopK.results()).  With metrics, the time not spent reading postings or selecting
+      the top k is counted as scoring.
+    */
+    int search(List<VocabEntry> terms, Context context) throws Exception {
+        Accumulators rsv = context.rsv;
+        long[] measured = context.measured;
+        long start = metrics == null ? 0 : System.nanoTime();
+        long reading = measured[QueryMetrics.READ];
+        long selecting = measured[QueryMetrics.SELECT];
+        int found;
+
+		/*
+		  Zero the accumulator array.
+		*/
+        rsv.clear();
+
+        if (blocked && !exhaustive)
+            found = searchBlockMax(terms, context);
+        else {
+			/*
+			  An impact ordered index is processed score-at-a-time, otherwise term-at-a-time
+			*/
+            if (impactOrdered)
+                measured[QueryMetrics.POSTINGS] += scoreImpacts(terms, context, budget);
+            else
+                for (VocabEntry termDetails : terms)
+                    measured[QueryMetrics.POSTINGS] += scoreTerm(termDetails, postingsList(termDetails, context), rsv);
+            if (metrics == null)
+                return context.topK.select(rsv);
+            long scored = System.nanoTime();
+            found = context.topK.select(rsv);
+            measured[QueryMetrics.SELECT] += System.nanoTime() - scored;
+        }
+        if (metrics != null)
+            measured[QueryMetrics.SCORE] += System.nanoTime() - start - (measured[QueryMetrics.READ] - reading) - (measured[QueryMetrics.SELECT] - selecting);
+        return found;
+    }
+
+    /*
+      stopWord()
+      ----------
+      The stop word list, loaded on first use
+    */
+    synchronized StopWord stopWord() throws Exception {
+        if (stopWord == null)
+            stopWord = new StopWord("stopwords-en.txt");
+        return stopWord;
+    }
+
+    /*
+      limitContexts()
+      ---------------
+      Allow at most limit search contexts (the queries the executor runs at once), before searching
+    */
+    void limitContexts(int limit) {
+        maxContexts = limit;
+        free = new Semaphore(limit);
+    }
+
+    /*
+      acquire()
+      ---------
+      Take a search context from the pool (or make a new one, or wait for one if there are maxContexts), give it
+      back with release()
+    */
+    Context acquire() throws Exception {
+        free.acquire();
+        Context context = idle.poll();
+        if (context == null) {
+            try {
+                context = new Context();
+            } catch (Exception e) {
+                free.release();
+                throw e;
+            }
+            contexts.add(context);
+        }
+        return context;
+    }
+
+    /*
+      release()
+      ---------
+    */
+    void release(Context context) {
+        idle.add(context);
+        free.release();
+    }
+
+    /*
+      parse()
+      -------
+      Analyse the query, set the context's query id (if the first token is a number) and terms (those in the
+      vocabulary).  If verbose then report the stop words.  This starts the measures of the query (see
+      QueryMetrics).
+    */
+    void parse(String query, Context context, boolean verbose) throws Exception {
+        boolean firstTerm = true;
+        long[] measured = context.measured;
+        Arrays.fill(measured, 0);
+        long now = metrics == null ? 0 : System.nanoTime();
+        context.started = now;
+        context.queryId = 0;
+        context.terms.clear();
+        StringTokenizer tokenizer = new StringTokenizer(query);
+        while (tokenizer.hasMoreTokens()) {
+            String token = tokenizer.nextToken();
+
+			/*
+			  A first token of digits is the query number (even if it is a stop word, such as 10)
+			*/
+            if (firstTerm && token.matches("[0-9]{1,18}")) {
+                context.queryId = Long.parseLong(token);
+                firstTerm = false;
+                continue;
+            }
+
+            // Implement stop words filter and Porter Stemmer
+            String term = context.pipeline.analyse(token);
+            if (metrics != null)
+                measured[QueryMetrics.ANALYSE] += -now + (now = System.nanoTime());
+            if (term == null) {
+                if (verbose)
+                    System.out.println("Stop word found! - skipping the stop word : '" + token + "'");
+                continue;
+            }
+            token = term;
+            firstTerm = false;
+
+			/*
+			  Does the term exist in the collection?
+			*/
+            measured[QueryMetrics.TERMS]++;
+            if (!lookup(token, context.terms))
+                measured[QueryMetrics.MISSING]++;
+            if (metrics != null)
+                measured[QueryMetrics.LOOKUP] += -now + (now = System.nanoTime());
+        }
+        if (metrics != null)
+            measured[QueryMetrics.ANALYSE] += System.nanoTime() - now;
+    }
+
+    /*
+      evaluate()
+      ----------
+      The results of the query parsed into the context, from the result cache if there.  With a result cache the
+      terms are put in the order of the cache key (their postings) before searching, so the results (down to the
+      last bit of the scores, which are summed in term order) are the same whether or not the query was cached.
+      With metrics this ends the measures of the query and records them.
+    */
+    Results evaluate(Context context) throws Exception {
+        Results results;
+        if (resultCache == null)
+            results = new Results(context, search(context.terms, context));
+        else {
+            Collections.sort(context.terms, POSTINGS_ORDER);
+            String key = ResultCache.key(manifest == null ? 0 : manifest.generation, context.topK.k, context.terms);
+            Results cached = resultCache.get(key);
+            if (cached == null) {
+                long generation = resultCache.generation();
+                cached = new Results(context, search(context.terms, context));
+                resultCache.put(key, cached, generation);
+            }
+            results = new Results(cached, context.queryId);
+        }
+
+        if (metrics != null) {
+            context.measured[QueryMetrics.TOTAL] = System.nanoTime() - context.started;
+            metrics.record(context.measured);
+            if (debug)
+                System.err.println(QueryMetrics.describe(context.queryId, context.measured));
+        }
+        return results;
+    }
+
+    /*
+      search()
+      --------
+      Search for the query (a line as JASSjr_search reads it) and return the top k documents.  Any number of
+      threads may search at once once the index is loaded and the options set.
+    */
+    Results search(String query) throws Exception {
+        return search(query, k);
+    }
+
+    /*
+      search()
+      --------
+      Search for the query and return the top wanted documents (at most the top k):  the selection (and with it the
+      block-max threshold) stops at those asked for rather than finding the top k and throwing the rest away.
+    */
+    Results search(String query, int wanted) throws Exception {
+        Context context = acquire();
+        try {
+            context.topK.k = Math.min(wanted, k);
+            parse(query, context, false);
+            return evaluate(context);
+        } finally {
+            context.topK.k = k;
+            release(context);
+        }
+    }
+
+    /*
+      newExecutor()
+      -------------
+      An executor to run queries on: a pool of the given number of threads or, if threads is 0, a virtual thread
+      per query (where the JVM has them, Java 21 onwards, otherwise a thread per processor).
+    */
+    static ExecutorService newExecutor(int threads) {
+        if (threads > 0)
+            return Executors.newFixedThreadPool(threads);
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception e) {
+            return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    /*
+      appendScore()
+      -------------
+      Append the score as String.format("%.4f") would, without the cost of String.format() unless the score is
+      (near enough) halfway between two 4 decimal place values.
+    */
+    static void appendScore(StringBuilder out, double score) {
+        double scaled = score * 10000;
+        double fraction = scaled - Math.floor(scaled);
+        if (score < 0 || score >= 1e9 || Math.abs(fraction - 0.5) < 1e-4) {
+            out.append(String.format(Locale.ROOT, "%.4f", score));        // '.' as below, in any locale
+            return;
+        }
+        long fixed = (long) Math.floor(scaled + 0.5);
+        out.append(fixed / 10000).append('.');
+        long digits = fixed % 10000;
+        for (long unit = 1000; unit > digits && unit > 1; unit /= 10)
+            out.append('0');
+        out.append(digits);
+    }
+
+    /*
+      trecRun()
+      ---------
+      The top (at most) k results in TREC run format (as trec_eval reads):
+        query-id Q0 document-id rank score run-name
+    */
+    String trecRun(Results results, int k) {
+        int found = Math.min(k, results.documents.length);
+        StringBuilder run = new StringBuilder(found * 40);
+        for (int position = 0; position < found; position++) {
+            run.append(results.queryId).append(" Q0 ").append(primaryKey.get(results.documents[position])).append(' ').append(position + 1).append(' ');
+            appendScore(run, results.scores[position]);
+            run.append(" JASSjr\n");
+        }
+        return run.toString();
+    }
+
+    /*
+      percentile()
+      ------------
+      The p-th percentile (nearest rank) of the sorted times (in nanoseconds), in milliseconds
+    */
+    static double percentile(long[] sorted, double p) {
+        return sorted[Math.max(0, (int) Math.ceil(p / 100 * sorted.length) - 1)] / 1e6;
+    }
+
+    /*
+      batch()
+      -------
+      Search for each query (one per line) in the query file on the given number of threads (0 for a virtual
+      thread per query), and write the results to the run file ordered by query id.  Report the wall time, the
+      throughput, and the latency of the queries.
+    */
+    void batch(String queryFile, String runFile, int threads) throws Exception {
+        List<String> queries = new ArrayList<String>();
+        for (String line : Files.readAllLines(Paths.get(queryFile)))
+            if (line.trim().length() != 0)
+                queries.add(line);
+
+        long start = System.nanoTime();
+        ExecutorService executor = newExecutor(threads);
+        List<Future<Results>> answers = new ArrayList<Future<Results>>();
+        for (final String query : queries)
+            answers.add(executor.submit(new Callable<Results>() {
+                public Results call() throws Exception {
+                    long started = System.nanoTime();
+                    Results results = search(query);
+                    results.nanoseconds = System.nanoTime() - started;
+                    results.run = trecRun(results, k);
+                    return results;
+                }
+            }));
+        List<Results> answered = new ArrayList<Results>();
+        try {
+            for (Future<Results> answer : answers)
+                answered.add(answer.get());
+        } finally {
+            executor.shutdown();            // even if a query failed, so that its threads don't keep the JVM alive
+        }
+
+		/*
+		  Write the run ordered by query id (queries with the same id stay in file order)
+		*/
+        Collections.sort(answered, new Comparator<Results>() {
+            public int compare(Results a, Results b) {
+                return Long.compare(a.queryId, b.queryId);
+            }
+        });
+        BufferedWriter out = Files.newBufferedWriter(Paths.get(runFile), StandardCharsets.UTF_8);
+        for (Results results : answered)
+            out.write(results.run);
+        out.close();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long[] times = new long[answered.size()];
+        for (int which = 0; which < times.length; which++)
+            times[which] = answered.get(which).nanoseconds;
+        Arrays.sort(times);
+        System.out.printf("%d queries in %.3f seconds, %.1f queries/second%n", times.length, seconds, times.length / seconds);
+        if (times.length != 0)
+            System.out.printf("latency ms: p50 %.3f  p90 %.3f  p99 %.3f  max %.3f%n", percentile(times, 50), percentile(times, 90), percentile(times, 99), percentile(times, 100));
+        if (postingsCache != null)
+            System.out.println(postingsCache.report());
+        if (resultCache != null)
+            System.out.println(resultCache.report());
+        if (metrics != null)
+            System.out.println(metrics.report());
+    }
+
+    /*
+      engage()
+      --------
+      Simple search engine ranking on BM25.
+    */
+    public void engage(String args[]) throws Exception {
+		/*
+		  Parse the parameters, "-mmap" to memory map the index, "-k <n>" to show the top n documents,
+		  "-budget <postings>" to stop processing an impact ordered index after (about) that many postings,
+		  "-exhaustive" to score every posting of a blocked index, and "-integer" for integer accumulators
+		  (for an impact ordered or quantised index).  "-batch <queries> <run>" searches for the queries in the file
+		  and writes a TREC run (the top 1000 unless -k is given) using "-threads <n>" threads (0 for virtual
+		  threads, one per processor by default).  "-cache <megabytes>" keeps the most recently read postings lists
+		  in memory (when not memory mapped), and "-resultcache <megabytes>" the results of the most recent queries.
+		  "-serve <port>" serves searches over HTTP (see SearchServer) on "-threads <n>" threads, each request
+		  finding only the top k it asks for (10 by default) but at most the top 1000 unless -k is given.
+		  "-metrics" times each phase of each query and publishes histograms of the times (and the work done) over
+		  JMX (see QueryMetrics), and "-debug" also reports each query on stderr.
+		  "-index <directory>" searches the index there rather than in the current directory and, if it is segmented,
+		  the server checks for new segments every "-reload <seconds>" (5 by default, 0 for never).
+		*/
+        boolean mapped = false;
+        boolean kGiven = false;
+        String queryFile = null;
+        String runFile = null;
+        int port = -1;
+        long reload = 5;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int arg = 0; arg < args.length; arg++)
+            if (args[arg].equals("-batch") && arg + 2 < args.length) {
+                queryFile = args[++arg];
+                runFile = args[++arg];
+            } else if (args[arg].equals("-serve") && arg + 1 < args.length && args[arg + 1].matches("[0-9]{1,5}"))
+                port = Integer.parseInt(args[++arg]);
+            else if (args[arg].equals("-threads") && arg + 1 < args.length && args[arg + 1].matches("[0-9]+"))
+                threads = Integer.parseInt(args[++arg]);
+            else if (args[arg].equals("-mmap"))
+                mapped = true;
+            else if (args[arg].equals("-index") && arg + 1 < args.length)
+                directory = args[++arg];
+            else if (args[arg].equals("-reload") && arg + 1 < args.length && args[arg + 1].matches("[0-9]+"))
+                reload = Long.parseLong(args[++arg]);
+            else if (args[arg].equals("-k") && arg + 1 < args.length && args[arg + 1].matches("[0-9]+")) {
+                k = Integer.parseInt(args[++arg]);
+                kGiven = true;
+            } else if (args[arg].equals("-budget") && arg + 1 < args.length && args[arg + 1].matches("[0-9]+"))
+                budget = Long.parseLong(args[++arg]);
+            else if (args[arg].equals("-exhaustive"))
+                exhaustive = true;
+            else if (args[arg].equals("-cache") && arg + 1 < args.length && args[arg + 1].matches("[0-9]+"))
+                postingsCache = new PostingsCache(Long.parseLong(args[++arg]) * 1024 * 1024);
+            else if (args[arg].equals("-resultcache") && arg + 1 < args.length && args[arg + 1].matches("[0-9]+"))
+                resultCache = new ResultCache(Long.parseLong(args[++arg]) * 1024 * 1024);
+            else if (args[arg].equals("-integer"))
+                integer = true;
+            else if (args[arg].equals("-metrics"))
+                metrics = new QueryMetrics();
+            else if (args[arg].equals("-debug")) {
+                metrics = metrics == null ? new QueryMetrics() : metrics;
+                debug = true;
+            } else {
+                System.out.println("Usage: java " + Thread.currentThread().getStackTrace()[1].getClassName() + " [-mmap] [-k <n>] [-budget <postings>] [-exhaustive] [-integer] [-cache <megabytes>] [-resultcache <megabytes>] [-metrics] [-debug] [-index <directory>] [-batch <queries> <run> | -serve <port> [-reload <seconds>]] [-threads <n>]");
+                System.exit(0);
             }
-            
+
+        loadIndex(mapped);
+        if (metrics != null)
+            metrics.register();
+        if (integer && !impactOrdered && !quantised) {
+            System.out.println("Integer accumulators need an impact ordered or quantised index");
+            System.exit(0);
+        }
+
+        limitContexts(threads == 0 ? Runtime.getRuntime().availableProcessors() : threads);   // the executor's parallelism
+        if (queryFile != null) {
+            if (!kGiven)
+                k = 1000;
+            batch(queryFile, runFile, threads);
+            return;
+        }
+        if (port >= 0) {
+            if (!kGiven)
+                k = 1000;           // the most a request can ask for, each selects only the k it asks for
+            SearchServer server = new SearchServer(this, port, threads);
+            if (manifest != null && reload > 0)
+                server.watch(reload);
+            server.start();
+            System.out.println("Serving http://localhost:" + port + "/search?q=<query>[&k=<n>][&id=<query id>][&format=json|trec]");
+            return;
+        }
+
+		/*
+		  Allocate buffers (the accumulators and the top-k selection of the rsv pointers)
+		*/
+        Context context = acquire();
+
+		/*
+		  Search (one query per line)
+		*/
+        System.out.print("Please enter term to search:");
+        Scanner stdin = new Scanner(System.in);
+        while (stdin.hasNextLine()) {
+            parse(stdin.nextLine(), context, true);
+
 			/*
-			  Sort the results list
+			  Search and find the top documents in the results list
 			*/
-            Arrays.sort(rsvPointers, new CompareRsv(rsv));
-            
+            Results results = evaluate(context);
+
 			/*
-			  Print the (at most) top 1000 documents in the results list in TREC eval format which is:
+			  Print the (at most) top k documents in the results list in TREC eval format which is:
 			  query-id Q0 document-id rank score run-name
 			*/
-            int doc_number = 10;
-            if (rsv[rsvPointers[0]] != 0.0D) {
-                System.out.println("Showing closest " + doc_number + " documents");
+            if (results.documents.length != 0) {
+                System.out.println("Showing closest " + k + " documents");
             }
             else {
                 System.out.println("No matching documents");
             }
-            for (int position = 0; rsv[rsvPointers[position]] != 0.0D && position < doc_number; position++)
-                System.out.println(queryId + " Q0 " + primaryKey.get(rsvPointers[position]) + " " + (position + 1) + " " + String.format("%.4f", rsv[rsvPointers[position]]) + " JASSjr");
+            for (int position = 0; position < results.documents.length; position++)
+                System.out.println(results.queryId + " Q0 " + primaryKey.get(results.documents[position]) + " " + (position + 1) + " " + String.format("%.4f", results.scores[position]) + " JASSjr");
 
             System.out.print("Please enter term to search:");
         }
+        System.err.println(AnalysisPipeline.report(Collections.singletonList(context.pipeline)));
+        if (postingsCache != null)
+            System.err.println(postingsCache.report());
+        if (resultCache != null)
+            System.err.println(resultCache.report());
+        if (metrics != null)
+            System.err.println(metrics.report());
     }
 
     /*
@@ -249,8 +1480,6 @@ class JASSjr_search {
     */
     public static void main(String args[]) {
         try {
-            args = new String[1];
-            args[0] = "travel.xml";
             JASSjr_search engine = new JASSjr_search();
             engine.engage(args);
         } catch (Exception e) {
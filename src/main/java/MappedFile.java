@@ -0,0 +1,148 @@
+/*
+  MappedFile.java
+  ---------------
+  Copyright (c) 2019 Andrew Trotman and Kat Lilly
+  Minimalistic BM25 search engine.
+*/
+
+import java.nio.ByteOrder;
+import java.nio.ByteBuffer;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+/*
+  CLASS MAPPEDFILE
+  ----------------
+  A read-only memory mapped file.  A ByteBuffer can address at most 2GB so larger files are mapped as several
+  chunks.  The buffers are native byte order (the order of the index files) and are only ever read with absolute
+  gets, so they can be shared between threads.
+*/
+class MappedFile {
+    static final long CHUNK_SIZE = 1L << 30;
+
+    long length;
+    long chunkSize;
+    ByteBuffer[] chunks;
+
+    /*
+      MappedFile()
+      ------------
+    */
+    MappedFile(String filename) throws IOException {
+        this(filename, CHUNK_SIZE);
+    }
+
+    /*
+      MappedFile()
+      ------------
+      Map the file in chunks of chunkSize bytes (a power of 2 no larger than 1GB)
+    */
+    MappedFile(String filename, long chunkSize) throws IOException {
+        this.chunkSize = chunkSize;
+        RandomAccessFile file = new RandomAccessFile(filename, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            length = channel.size();
+            chunks = new ByteBuffer[(int) ((length + chunkSize - 1) / chunkSize)];
+            for (int which = 0; which < chunks.length; which++) {
+                long start = which * chunkSize;
+                chunks[which] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(chunkSize, length - start));
+                chunks[which].order(ByteOrder.nativeOrder());
+            }
+        } finally {
+            file.close();       // the mappings remain valid after the file is closed
+        }
+    }
+
+    /*
+      length()
+      --------
+    */
+    long length() {
+        return length;
+    }
+
+    /*
+      whole()
+      -------
+      The whole file as one buffer (for files that fit in one chunk)
+    */
+    ByteBuffer whole() throws IOException {
+        if (chunks.length > 1)
+            throw new IOException("File too large to map as one buffer");
+        return chunks.length == 0 ? ByteBuffer.allocate(0) : chunks[0];
+    }
+
+    /*
+      chunk()
+      -------
+      Return the buffer holding all of the size bytes at where, or null if they cross a chunk boundary.  The bytes
+      start at position offset(where) in the buffer.
+    */
+    ByteBuffer chunk(long where, int size) {
+        ByteBuffer chunk = chunks[(int) (where / chunkSize)];
+        return offset(where) + size > chunk.capacity() ? null : chunk;
+    }
+
+    /*
+      offset()
+      --------
+      The position of where in the buffer returned by chunk()
+    */
+    int offset(long where) {
+        return (int) (where % chunkSize);
+    }
+
+    /*
+      copy()
+      ------
+      Copy size bytes starting at where into a new (native byte order) buffer.  Used for reads that cross chunks.
+    */
+    ByteBuffer copy(long where, int size) {
+        ByteBuffer into = ByteBuffer.allocate(size);
+        into.order(ByteOrder.nativeOrder());
+        for (int at = 0; at < size; at++, where++)
+            into.put(at, chunks[(int) (where / chunkSize)].get(offset(where)));
+        return into;
+    }
+
+    /*
+      close()
+      -------
+      Unmap the file now rather than when its buffers are garbage collected (so that the space of a deleted file is
+      freed).  No buffer from the file may be used afterwards.  Where the JVM won't unmap a buffer it is left to the
+      garbage collector.
+    */
+    void close() {
+        for (ByteBuffer chunk : chunks)
+            unmap(chunk);
+        chunks = new ByteBuffer[0];
+    }
+
+    /*
+      unmap()
+      -------
+      Unmap a mapped buffer, through Unsafe.invokeCleaner() (Java 9 onwards) or the buffer's cleaner (Java 8)
+    */
+    static void unmap(ByteBuffer buffer) {
+        try {
+            Class<?> unsafe = Class.forName("sun.misc.Unsafe");
+            Field instance = unsafe.getDeclaredField("theUnsafe");
+            instance.setAccessible(true);
+            unsafe.getMethod("invokeCleaner", ByteBuffer.class).invoke(instance.get(null), buffer);
+        } catch (Exception e) {
+            try {
+                Method getCleaner = buffer.getClass().getMethod("cleaner");
+                getCleaner.setAccessible(true);
+                Object cleaner = getCleaner.invoke(buffer);
+                if (cleaner != null)
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+            } catch (Exception ignored) {
+                // left to the garbage collector
+            }
+        }
+    }
+}
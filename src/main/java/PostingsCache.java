@@ -0,0 +1,80 @@
+/*
+  PostingsCache.java
+  ------------------
+  Copyright (c) 2019 Andrew Trotman and Kat Lilly
+  Minimalistic BM25 search engine.
+*/
+
+import java.util.Map;
+import java.util.Iterator;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+
+/*
+  CLASS POSTINGSCACHE
+  -------------------
+  The postings lists most recently read from disk, keyed on where the list is in postings.bin, holding at most a
+  given number of bytes (least recently used lists are evicted first).  A list larger than the cache is never
+  cached.  The cache is safe for any number of threads: lookups and insertions lock the cache, but reading a list
+  from disk (on a miss) does not, so two threads missing on the same list at once may both read it.  The cached
+  buffers are shared, so get() returns a duplicate that the caller may move about in but must not write to.
+*/
+class PostingsCache {
+    long capacity;                          // the most bytes of postings to hold
+    long bytes;                             // the bytes of postings held
+    LinkedHashMap<Long, ByteBuffer> lists = new LinkedHashMap<Long, ByteBuffer>(16, 0.75f, true);
+    long hits;
+    long misses;
+    long evictions;
+
+    /*
+      PostingsCache()
+      ---------------
+    */
+    PostingsCache(long capacity) {
+        this.capacity = capacity;
+    }
+
+    /*
+      get()
+      -----
+      The list at where in postings.bin (as a buffer of its own), or null if it isn't cached
+    */
+    synchronized ByteBuffer get(long where) {
+        ByteBuffer list = lists.get(where);
+        if (list == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return list.duplicate();
+    }
+
+    /*
+      put()
+      -----
+      Cache the list at where in postings.bin (from position 0 to its capacity), evicting the least recently used
+      lists to make room
+    */
+    synchronized void put(long where, ByteBuffer list) {
+        if (list.capacity() > capacity || lists.containsKey(where))
+            return;
+        bytes += list.capacity();
+        lists.put(where, list);
+        Iterator<Map.Entry<Long, ByteBuffer>> eldest = lists.entrySet().iterator();
+        while (bytes > capacity) {
+            bytes -= eldest.next().getValue().capacity();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /*
+      report()
+      --------
+    */
+    synchronized String report() {
+        long lookups = hits + misses;
+        return String.format("Postings cache: %d lookups, %d hits (%.1f%%), %d misses, %d evictions, %d lists in %d of %d bytes", lookups, hits, lookups == 0 ? 0.0 : hits * 100.0 / lookups, misses, evictions, lists.size(), bytes, capacity);
+    }
+}
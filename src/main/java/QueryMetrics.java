@@ -0,0 +1,295 @@
+/*
+  QueryMetrics.java
+  -----------------
+  Copyright (c) 2019 Andrew Trotman and Kat Lilly
+  Minimalistic BM25 search engine.
+*/
+
+import java.util.Arrays;
+import javax.management.Attribute;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+import javax.management.MBeanServer;
+import javax.management.DynamicMBean;
+import javax.management.AttributeList;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.ReflectionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.AttributeNotFoundException;
+
+/*
+  CLASS QUERYMETRICS
+  ------------------
+  Where the time of each query goes, and how much work it does.  Each query measures (in its Context) the
+  nanoseconds spent in each phase:  analysing the query (tokenising, stopping and stemming), looking its terms up
+  in the vocabulary, reading the postings lists (from the file, the memory map, or the postings cache), scoring
+  the postings into the accumulators, and selecting the top k, along with the total; and it counts its terms, the
+  terms missing from the vocabulary, the postings scored, and the bytes of postings read from the file (lists
+  memory mapped or found in the postings cache aren't read so aren't counted).  Each of the measures is
+  recorded into a histogram of all the queries so far, which are published over JMX (as JASSjr:type=QueryMetrics,
+  see jconsole) as the count, total, mean, 50th, 90th, 99th and 99.9th percentiles and the maximum of each.
+  Times are published in microseconds.  With a search engine's metrics set to null (the default) nothing is
+  timed.
+*/
+class QueryMetrics implements DynamicMBean {
+    /*
+      The measures of a query, the first TIMES of which are times (in nanoseconds)
+    */
+    static final int ANALYSE = 0;
+    static final int LOOKUP = 1;
+    static final int READ = 2;
+    static final int SCORE = 3;
+    static final int SELECT = 4;
+    static final int TOTAL = 5;
+    static final int TERMS = 6;
+    static final int MISSING = 7;
+    static final int POSTINGS = 8;
+    static final int BYTES = 9;
+    static final int TIMES = 6;
+    static final String[] NAMES = {"analyse", "lookup", "read", "score", "select", "total", "terms", "missing", "postings", "bytes"};
+    static final String[] STATISTICS = {"count", "total", "mean", "p50", "p90", "p99", "p999", "max"};
+
+    /*
+      CLASS HISTOGRAM
+      ---------------
+      A log-linear histogram (as HdrHistogram):  values below 2 * SUB_BUCKETS are counted exactly and above that
+      each power of 2 is split into SUB_BUCKETS buckets, so any value is reported to within 1 part in SUB_BUCKETS
+      (less than 1%) in a fixed amount of memory.  Values are clamped to LARGEST.  Safe to record into from any
+      number of threads at once.
+    */
+    static class Histogram {
+        static final int SUB_BUCKET_BITS = 7;
+        static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        static final long LARGEST = (1L << 42) - 1;       // about 73 minutes in nanoseconds
+
+        AtomicLongArray counts = new AtomicLongArray(bucket(LARGEST) + 1);
+        AtomicLong count = new AtomicLong();
+        AtomicLong total = new AtomicLong();
+        AtomicLong largest = new AtomicLong();
+
+        /*
+          bucket()
+          --------
+          The bucket value falls in
+        */
+        static int bucket(long value) {
+            if (value < 2 * SUB_BUCKETS)
+                return (int) value;
+            int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+            return shift * SUB_BUCKETS + (int) (value >>> shift);
+        }
+
+        /*
+          highest()
+          ---------
+          The largest value that falls in the bucket
+        */
+        static long highest(int bucket) {
+            if (bucket < 2 * SUB_BUCKETS)
+                return bucket;
+            int shift = bucket / SUB_BUCKETS - 1;
+            return ((long) (bucket - shift * SUB_BUCKETS + 1) << shift) - 1;
+        }
+
+        /*
+          record()
+          --------
+        */
+        void record(long value) {
+            value = Math.max(0, Math.min(value, LARGEST));
+            counts.incrementAndGet(bucket(value));
+            count.incrementAndGet();
+            total.addAndGet(value);
+            for (long was = largest.get(); value > was && !largest.compareAndSet(was, value); was = largest.get())
+                ;           // nothing
+        }
+
+        /*
+          percentile()
+          ------------
+          The p-th percentile (nearest rank) of the values recorded, to the accuracy of the buckets
+        */
+        long percentile(double p) {
+            long recorded = 0;
+            for (int bucket = 0; bucket < counts.length(); bucket++)
+                recorded += counts.get(bucket);
+            long rank = Math.max(1, (long) Math.ceil(p / 100 * recorded));
+            long seen = 0;
+            for (int bucket = 0; bucket < counts.length(); bucket++)
+                if ((seen += counts.get(bucket)) >= rank)
+                    return Math.min(highest(bucket), largest.get());
+            return 0;
+        }
+
+        /*
+          reset()
+          -------
+        */
+        void reset() {
+            for (int bucket = 0; bucket < counts.length(); bucket++)
+                counts.set(bucket, 0);
+            count.set(0);
+            total.set(0);
+            largest.set(0);
+        }
+    }
+
+    Histogram[] histograms = new Histogram[NAMES.length];
+
+    /*
+      QueryMetrics()
+      --------------
+    */
+    QueryMetrics() {
+        for (int which = 0; which < histograms.length; which++)
+            histograms[which] = new Histogram();
+    }
+
+    /*
+      record()
+      --------
+      Record the measures of a query (indexed as NAMES)
+    */
+    void record(long[] measured) {
+        for (int which = 0; which < histograms.length; which++)
+            histograms[which].record(measured[which]);
+    }
+
+    /*
+      statistic()
+      -----------
+      The named statistic (one of STATISTICS) of a measure, times in microseconds
+    */
+    Number statistic(int measure, String name) {
+        Histogram histogram = histograms[measure];
+        double scale = measure < TIMES ? 1e3 : 1;
+        if (name.equals("count"))
+            return histogram.count.get();
+        if (name.equals("mean")) {
+            long count = histogram.count.get();
+            return count == 0 ? 0 : histogram.total.get() / scale / count;
+        }
+        long value;
+        if (name.equals("total"))
+            value = histogram.total.get();
+        else if (name.equals("max"))
+            value = histogram.largest.get();
+        else
+            value = histogram.percentile(name.equals("p999") ? 99.9 : Integer.parseInt(name.substring(1)));
+        return measure < TIMES ? (Number) (value / scale) : (Number) value;
+    }
+
+    /*
+      describe()
+      ----------
+      A one line summary of the measures of a query (for -debug)
+    */
+    static String describe(long queryId, long[] measured) {
+        StringBuilder line = new StringBuilder("query ").append(queryId).append(':');
+        for (int which = 0; which < NAMES.length; which++) {
+            line.append(' ').append(NAMES[which]).append(' ');
+            if (which < TIMES)
+                line.append(String.format("%.1fus", measured[which] / 1e3));
+            else
+                line.append(measured[which]);
+        }
+        return line.toString();
+    }
+
+    /*
+      report()
+      --------
+      A table of the statistics of each measure (times in microseconds)
+    */
+    String report() {
+        StringBuilder table = new StringBuilder(String.format("%-10s", "measure"));
+        for (String statistic : STATISTICS)
+            table.append(String.format(" %12s", statistic));
+        for (int which = 0; which < NAMES.length; which++) {
+            table.append(String.format("%n%-10s", NAMES[which] + (which < TIMES ? " us" : "")));
+            for (String statistic : STATISTICS) {
+                Number value = statistic(which, statistic);
+                table.append(value instanceof Double ? String.format(" %12.1f", value.doubleValue()) : String.format(" %12d", value.longValue()));
+            }
+        }
+        return table.toString();
+    }
+
+    /*
+      register()
+      ----------
+      Publish the metrics on the platform MBean server (replacing any already there)
+    */
+    void register() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("JASSjr:type=QueryMetrics");
+        if (server.isRegistered(name))
+            server.unregisterMBean(name);
+        server.registerMBean(this, name);
+    }
+
+    /*
+      getAttribute()
+      --------------
+      The attributes are named <measure>.<statistic>, for example total.p99
+    */
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        int dot = attribute.indexOf('.');
+        if (dot >= 0) {
+            int measure = Arrays.asList(NAMES).indexOf(attribute.substring(0, dot));
+            String statistic = attribute.substring(dot + 1);
+            if (measure >= 0 && Arrays.asList(STATISTICS).contains(statistic))
+                return statistic(measure, statistic);
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes)
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException e) {
+                // leave it out, as the specification says
+            }
+        return list;
+    }
+
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException(attribute.getName() + " is read only");
+    }
+
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    /*
+      invoke()
+      --------
+      The one operation, reset(), clears the histograms
+    */
+    public Object invoke(String operation, Object[] parameters, String[] signature) throws ReflectionException {
+        if (!operation.equals("reset"))
+            throw new ReflectionException(new NoSuchMethodException(operation));
+        for (Histogram histogram : histograms)
+            histogram.reset();
+        return null;
+    }
+
+    public MBeanInfo getMBeanInfo() {
+        MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[NAMES.length * STATISTICS.length];
+        int at = 0;
+        for (int which = 0; which < NAMES.length; which++)
+            for (String statistic : STATISTICS) {
+                boolean time = which < TIMES && !statistic.equals("count");
+                String type = time || statistic.equals("mean") ? "java.lang.Double" : "java.lang.Long";
+                attributes[at++] = new MBeanAttributeInfo(NAMES[which] + "." + statistic, type, statistic + " of " + NAMES[which] + (time ? " (microseconds)" : "") + " per query", true, false, false);
+            }
+        MBeanOperationInfo[] operations = {new MBeanOperationInfo("reset", "Clear the histograms", new MBeanParameterInfo[0], "void", MBeanOperationInfo.ACTION)};
+        return new MBeanInfo(getClass().getName(), "Per-query latency breakdown and work of JASSjr_search", attributes, null, operations, null);
+    }
+}
@@ -0,0 +1,334 @@
+/*
+  RegressionHarness.java
+  ----------------------
+  Copyright (c) 2019 Andrew Trotman and Kat Lilly
+  Minimalistic BM25 search engine.
+*/
+
+import java.io.File;
+import java.util.List;
+import java.util.Locale;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.io.PrintStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.Collections;
+import java.util.Comparator;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.security.MessageDigest;
+import java.util.concurrent.Future;
+import java.util.concurrent.Callable;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.util.concurrent.ExecutorService;
+
+/*
+  CLASS REGRESSIONHARNESS
+  -----------------------
+  Check that a change to the search engine hasn't made it slower or changed its rankings:  index the collection,
+  search for every topic (the top 1000 documents), evaluate the run against the relevance judgements (see TrecEval),
+  and compare the measurements with those stored in a baseline file, failing (exit status 1) if any has moved
+  further than its tolerance.  Run from this directory:
+    java RegressionHarness [-collection <xml>] [-queries <topics>] [-qrels <qrels>] [-postings <format>]
+                           [-threads <n>] [-rounds <n>] [-baseline <file>] [-tolerance <measure>=<tolerance>] [-record]
+  With -record (or if there is no baseline yet) the measurements become the baseline.  The tolerances are kept in
+  the baseline file (as tolerance.<measure>), so they can be edited there or given with -tolerance.  If the qrels
+  judge none of the documents in the run (as with the default collection, travel.xml, and the WSJ qrels) the
+  effectiveness isn't measured, and the rankings are only checked by run.md5.
+*/
+class RegressionHarness {
+    /*
+      The measurements, how each is compared, and its default tolerance:  EFFECTIVENESS may not move more than the
+      tolerance either way, LOWER and HIGHER may not get worse (higher or lower) by more than the tolerance as a
+      proportion of the baseline, and EXACT must not change.
+    */
+    static final String EFFECTIVENESS = "effectiveness";
+    static final String LOWER = "lower";
+    static final String HIGHER = "higher";
+    static final String EXACT = "exact";
+    static final String[][] MEASURES = {
+        {"map", EFFECTIVENESS, "0.0005"},
+        {"P_10", EFFECTIVENESS, "0.0005"},
+        {"ndcg", EFFECTIVENESS, "0.0005"},
+        {"run.md5", EXACT, "0"},
+        {"index.seconds", LOWER, "0.5"},
+        {"index.bytes", LOWER, "0.01"},
+        {"heap.peak.bytes", LOWER, "0.5"},
+        {"qps", HIGHER, "0.5"},
+        {"latency.p50.ms", LOWER, "0.5"},
+        {"latency.p99.ms", LOWER, "1.0"}
+    };
+
+    String collection = "travel.xml";
+    String queries = "51-100.titles.txt";
+    String qrels = "51-100.qrels.txt";
+    String postingsFormat = IndexWriter.RAW;
+    String baselineFile = "regression-baseline.properties";
+    int threads = 1;
+    int rounds = 5;
+    boolean record;
+    Properties tolerances = new Properties();       // given with -tolerance
+    Properties measurements = new Properties();
+
+    /*
+      buildIndex()
+      ------------
+      Index the collection into directory (quietly)
+    */
+    void buildIndex(String directory) throws Exception {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            public void write(int b) {
+            }
+        }));
+        try {
+            JASSjr_index indexer = new JASSjr_index();
+            indexer.directory = directory;
+            indexer.postingsFormat = postingsFormat;
+            indexer.indexFile(collection, 1, new StopWord("stopwords-en.txt"), new InPlacePorterStemmer());
+            indexer.serialise();
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    /*
+      peakHeap()
+      ----------
+      The sum of the peak usage of the heap memory pools since they were reset
+    */
+    static long peakHeap(boolean reset) {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            if (pool.getType() == MemoryType.HEAP) {
+                if (reset)
+                    pool.resetPeakUsage();
+                else
+                    peak += pool.getPeakUsage().getUsed();
+            }
+        return peak;
+    }
+
+    /*
+      measure()
+      ---------
+      Index, search, and evaluate, recording the measurements
+    */
+    void measure() throws Exception {
+        peakHeap(true);
+        File directory = Files.createTempDirectory("jassjr").toFile();
+        try {
+			/*
+			  Index
+			*/
+            long start = System.nanoTime();
+            buildIndex(directory.getPath());
+            measurements.setProperty("index.seconds", String.format(Locale.ROOT, "%.3f", (System.nanoTime() - start) / 1e9));
+            long bytes = 0;
+            for (File file : directory.listFiles())
+                bytes += file.length();
+            measurements.setProperty("index.bytes", "" + bytes);
+
+			/*
+			  Search once (which warms up the JIT) for the run
+			*/
+            final JASSjr_search engine = new JASSjr_search();
+            engine.directory = directory.getPath();
+            engine.k = 1000;
+            engine.loadIndex(false);
+            List<String> topics = new ArrayList<String>();
+            for (String line : Files.readAllLines(Paths.get(queries)))
+                if (line.trim().length() != 0)
+                    topics.add(line);
+            List<JASSjr_search.Results> answers = new ArrayList<JASSjr_search.Results>();
+            for (String topic : topics)
+                answers.add(engine.search(topic));
+            Collections.sort(answers, new Comparator<JASSjr_search.Results>() {
+                public int compare(JASSjr_search.Results a, JASSjr_search.Results b) {
+                    return Long.compare(a.queryId, b.queryId);
+                }
+            });
+            StringBuilder run = new StringBuilder();
+            for (JASSjr_search.Results results : answers)
+                run.append(engine.trecRun(results, engine.k));
+
+			/*
+			  Evaluate the run
+			*/
+            TrecEval.Measures effectiveness = new TrecEval(qrels).evaluate(Arrays.asList(run.toString().split("\n")));
+            if (effectiveness.judgedRetrieved == 0)
+                System.out.println(qrels + " judges none of the documents in the run, so effectiveness is not measured (run.md5 still checks the rankings)");
+            else {
+                measurements.setProperty("map", String.format(Locale.ROOT, "%.4f", effectiveness.map));
+                measurements.setProperty("P_10", String.format(Locale.ROOT, "%.4f", effectiveness.p10));
+                measurements.setProperty("ndcg", String.format(Locale.ROOT, "%.4f", effectiveness.ndcg));
+            }
+            StringBuilder md5 = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("MD5").digest(run.toString().getBytes(StandardCharsets.UTF_8)))
+                md5.append(String.format(Locale.ROOT, "%02x", b & 0xFF));
+            measurements.setProperty("run.md5", md5.toString());
+
+			/*
+			  Search rounds times more, timing each query
+			*/
+            ExecutorService executor = JASSjr_search.newExecutor(threads);
+            List<Future<Long>> times = new ArrayList<Future<Long>>();
+            start = System.nanoTime();
+            for (int round = 0; round < rounds; round++)
+                for (final String topic : topics)
+                    times.add(executor.submit(new Callable<Long>() {
+                        public Long call() throws Exception {
+                            long started = System.nanoTime();
+                            engine.search(topic);
+                            return System.nanoTime() - started;
+                        }
+                    }));
+            long[] latencies = new long[times.size()];
+            for (int which = 0; which < latencies.length; which++)
+                latencies[which] = times.get(which).get();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            executor.shutdown();
+            Arrays.sort(latencies);
+            measurements.setProperty("qps", String.format(Locale.ROOT, "%.1f", latencies.length / seconds));
+            measurements.setProperty("latency.p50.ms", String.format(Locale.ROOT, "%.3f", JASSjr_search.percentile(latencies, 50)));
+            measurements.setProperty("latency.p99.ms", String.format(Locale.ROOT, "%.3f", JASSjr_search.percentile(latencies, 99)));
+            measurements.setProperty("heap.peak.bytes", "" + peakHeap(false));
+        } finally {
+            for (File file : directory.listFiles())
+                file.delete();
+            directory.delete();
+        }
+    }
+
+    /*
+      compare()
+      ---------
+      Compare the measurements to the baseline, report them, return true if they are all within tolerance
+    */
+    boolean compare(Properties baseline) {
+        boolean passed = true;
+        System.out.printf(Locale.ROOT, "%-16s %32s %32s %9s  %s%n", "measure", "baseline", "current", "change", "status");
+        for (String[] measure : MEASURES) {
+            String name = measure[0];
+            String kind = measure[1];
+            String was = baseline.getProperty(name);
+            String now = measurements.getProperty(name);
+            String change = "";
+            String status;
+            double tolerance = Double.parseDouble(tolerances.getProperty(name, baseline.getProperty("tolerance." + name, measure[2])));
+            if (now == null)
+                status = was == null ? "not measured" : "CHANGED";
+            else if (was == null)
+                status = "new";
+            else if (kind.equals(EXACT))
+                status = was.equals(now) ? "ok" : "CHANGED";
+            else {
+                double before = Double.parseDouble(was);
+                double after = Double.parseDouble(now);
+                boolean ok;
+                if (kind.equals(EFFECTIVENESS)) {
+                    change = String.format(Locale.ROOT, "%+.4f", after - before);
+                    ok = Math.abs(after - before) <= tolerance;
+                } else {
+                    double proportion = before == 0 ? 0 : (after - before) / before;
+                    change = String.format(Locale.ROOT, "%+.1f%%", proportion * 100);
+                    ok = kind.equals(LOWER) ? proportion <= tolerance : proportion >= -tolerance;
+                }
+                status = ok ? "ok" : "FAILED (tolerance " + tolerance + ")";
+            }
+            if (status.startsWith("CHANGED") || status.startsWith("FAILED"))
+                passed = false;
+            System.out.printf(Locale.ROOT, "%-16s %32s %32s %9s  %s%n", name, was == null ? "-" : was, now == null ? "-" : now, change, status);
+        }
+        return passed;
+    }
+
+    /*
+      save()
+      ------
+      Make the measurements (and the tolerances) the baseline
+    */
+    void save(Properties baseline) throws Exception {
+        Properties saved = new Properties();
+        saved.putAll(measurements);
+        for (String[] measure : MEASURES)
+            saved.setProperty("tolerance." + measure[0], tolerances.getProperty(measure[0], baseline.getProperty("tolerance." + measure[0], measure[2])));
+        FileOutputStream out = new FileOutputStream(baselineFile);
+        saved.store(out, "RegressionHarness baseline: " + collection + ", " + queries + ", " + qrels + ", " + postingsFormat + " postings, " + threads + " threads, " + rounds + " rounds");
+        out.close();
+        System.out.println("Baseline written to " + baselineFile);
+    }
+
+    /*
+      engage()
+      --------
+    */
+    int engage(String args[]) throws Exception {
+        for (int arg = 0; arg < args.length; arg++)
+            if (args[arg].equals("-record"))
+                record = true;
+            else if (arg + 1 >= args.length)
+                return usage();
+            else if (args[arg].equals("-collection"))
+                collection = args[++arg];
+            else if (args[arg].equals("-queries"))
+                queries = args[++arg];
+            else if (args[arg].equals("-qrels"))
+                qrels = args[++arg];
+            else if (args[arg].equals("-postings"))
+                postingsFormat = args[++arg];
+            else if (args[arg].equals("-baseline"))
+                baselineFile = args[++arg];
+            else if (args[arg].equals("-threads") && args[arg + 1].matches("[0-9]+"))
+                threads = Integer.parseInt(args[++arg]);
+            else if (args[arg].equals("-rounds") && args[arg + 1].matches("[1-9][0-9]*"))
+                rounds = Integer.parseInt(args[++arg]);
+            else if (args[arg].equals("-tolerance") && args[arg + 1].matches("[^=]+=[0-9.]+"))
+                tolerances.setProperty(args[arg + 1].split("=")[0], args[++arg].split("=")[1]);
+            else
+                return usage();
+
+        measure();
+        Properties baseline = new Properties();
+        if (new File(baselineFile).exists()) {
+            FileInputStream in = new FileInputStream(baselineFile);
+            baseline.load(in);
+            in.close();
+        } else if (!record) {
+            System.out.println("No baseline in " + baselineFile + ", recording one");
+            record = true;
+        }
+
+        boolean passed = compare(baseline);
+        if (record) {
+            save(baseline);
+            return 0;
+        }
+        System.out.println(passed ? "PASSED" : "FAILED");
+        return passed ? 0 : 1;
+    }
+
+    /*
+      usage()
+      -------
+    */
+    static int usage() {
+        System.out.println("Usage: java RegressionHarness [-collection <xml>] [-queries <topics>] [-qrels <qrels>] [-postings <format>]");
+        System.out.println("                              [-threads <n>] [-rounds <n>] [-baseline <file>] [-tolerance <measure>=<tolerance>] [-record]");
+        return 2;
+    }
+
+    /*
+      main()
+      ------
+    */
+    public static void main(String args[]) throws Exception {
+        System.exit(new RegressionHarness().engage(args));
+    }
+}
@@ -0,0 +1,130 @@
+/*
+  ResultCache.java
+  ----------------
+  Copyright (c) 2019 Andrew Trotman and Kat Lilly
+  Minimalistic BM25 search engine.
+*/
+
+import java.util.Map;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/*
+  CLASS RESULTCACHE
+  -----------------
+  The results of the most recently evaluated queries, keyed on the normalised query (see key()), holding at most
+  (about) a given number of bytes with the least recently used queries evicted first.  The cache is safe for any
+  number of threads.  When the index changes the cache is invalidated: everything is dropped, and results
+  evaluated against the old index (started before the invalidation) are not cached when they finish.
+*/
+class ResultCache {
+    static final int ENTRY_OVERHEAD = 128;  // bytes for the map entry, key, and Results (excluding their arrays)
+
+    long capacity;                          // the most bytes to hold (estimated)
+    long bytes;                             // the bytes held (estimated)
+    long generation;                        // incremented each time the cache is invalidated
+    LinkedHashMap<String, JASSjr_search.Results> queries = new LinkedHashMap<String, JASSjr_search.Results>(16, 0.75f, true);
+    long hits;
+    long misses;
+    long evictions;
+    long invalidations;
+
+    /*
+      ResultCache()
+      -------------
+    */
+    ResultCache(long capacity) {
+        this.capacity = capacity;
+    }
+
+    /*
+      key()
+      -----
+      The normalised query: its terms (after stop word removal and stemming, and only those in the vocabulary)
+      identified by their postings, in order of postings.  The terms must already be in that order.  A repeated term
+      is kept as it is scored twice.  The key starts with the generation of the index (of a segmented index, else 0)
+      so that results from an index since replaced are never mistaken for those of the index replacing it, and the
+      number of documents asked for (k) so that a short list is never returned for a longer one.
+    */
+    static String key(long generation, int k, Iterable<JASSjr_search.VocabEntry> terms) {
+        StringBuilder key = new StringBuilder();
+        key.append(generation).append(':').append(k).append(':');
+        for (JASSjr_search.VocabEntry term : terms)
+            key.append(term.key()).append(' ');
+        return key.toString();
+    }
+
+    /*
+      size()
+      ------
+      The (estimated) bytes used to cache the results
+    */
+    static long size(String key, JASSjr_search.Results results) {
+        return ENTRY_OVERHEAD + 2L * key.length() + 12L * results.documents.length;
+    }
+
+    /*
+      generation()
+      ------------
+      The current generation, to pass to put() with results evaluated from now on
+    */
+    synchronized long generation() {
+        return generation;
+    }
+
+    /*
+      get()
+      -----
+      The results of the query, or null if they aren't cached
+    */
+    synchronized JASSjr_search.Results get(String key) {
+        JASSjr_search.Results results = queries.get(key);
+        if (results == null)
+            misses++;
+        else
+            hits++;
+        return results;
+    }
+
+    /*
+      put()
+      -----
+      Cache the results of the query, evaluated in the given generation, evicting the least recently used queries to
+      make room
+    */
+    synchronized void put(String key, JASSjr_search.Results results, long generation) {
+        long size = size(key, results);
+        if (generation != this.generation || size > capacity || queries.containsKey(key))
+            return;
+        bytes += size;
+        queries.put(key, results);
+        Iterator<Map.Entry<String, JASSjr_search.Results>> eldest = queries.entrySet().iterator();
+        while (bytes > capacity) {
+            Map.Entry<String, JASSjr_search.Results> entry = eldest.next();
+            bytes -= size(entry.getKey(), entry.getValue());
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /*
+      invalidate()
+      ------------
+      Drop everything (the index has changed)
+    */
+    synchronized void invalidate() {
+        queries.clear();
+        bytes = 0;
+        generation++;
+        invalidations++;
+    }
+
+    /*
+      report()
+      --------
+    */
+    synchronized String report() {
+        long lookups = hits + misses;
+        return String.format("Result cache: %d lookups, %d hits (%.1f%%), %d misses, %d evictions, %d invalidations, %d queries in %d of %d bytes", lookups, hits, lookups == 0 ? 0.0 : hits * 100.0 / lookups, misses, evictions, invalidations, queries.size(), bytes, capacity);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+  SearchLoadClient.java
+  ---------------------
+  Copyright (c) 2019 Andrew Trotman and Kat Lilly
+  Minimalistic BM25 search engine.
+*/
+
+import java.net.URL;
+import java.util.List;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.net.HttpURLConnection;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+  CLASS SEARCHLOADCLIENT
+  ----------------------
+  Load a search server (JASSjr_search -serve <port>) with the queries from a file, sent over a number of kept-alive
+  connections each sending one query at a time, and report the throughput and latency.  For example:
+    java SearchLoadClient http://localhost:8080 51-100.titles.txt -connections 8 -requests 10000
+*/
+class SearchLoadClient {
+    /*
+      request()
+      ---------
+      Send the request and read the whole response (so the connection can be reused), return the HTTP status
+    */
+    static int request(URL url, byte[] buffer) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        int status = connection.getResponseCode();
+        InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        if (in != null) {
+            while (in.read(buffer) >= 0)
+                ;
+            in.close();
+        }
+        return status;
+    }
+
+    /*
+      main()
+      ------
+    */
+    public static void main(String args[]) throws Exception {
+        int connections = Runtime.getRuntime().availableProcessors();
+        int requests = 1000;
+        int k = 10;
+        String format = "json";
+        for (int arg = 2; arg < args.length; arg++)
+            if (args[arg].equals("-connections") && arg + 1 < args.length && args[arg + 1].matches("[1-9][0-9]*"))
+                connections = Integer.parseInt(args[++arg]);
+            else if (args[arg].equals("-requests") && arg + 1 < args.length && args[arg + 1].matches("[1-9][0-9]*"))
+                requests = Integer.parseInt(args[++arg]);
+            else if (args[arg].equals("-k") && arg + 1 < args.length && args[arg + 1].matches("[0-9]+"))
+                k = Integer.parseInt(args[++arg]);
+            else if (args[arg].equals("-trec"))
+                format = "trec";
+            else
+                args = new String[0];
+        if (args.length < 2) {
+            System.out.println("Usage: java SearchLoadClient <server url> <queries> [-connections <n>] [-requests <n>] [-k <n>] [-trec]");
+            System.exit(0);
+        }
+
+		/*
+		  The URL of each query (blank lines are not queries), and enough kept-alive connections for every client
+		  thread
+		*/
+        System.setProperty("http.maxConnections", "" + connections);
+        final List<URL> urls = new ArrayList<URL>();
+        for (String query : Files.readAllLines(Paths.get(args[1])))
+            if (query.trim().length() != 0)
+                urls.add(new URL(args[0] + "/search?format=" + format + "&k=" + k + "&q=" + URLEncoder.encode(query, "UTF-8")));
+        if (urls.isEmpty()) {
+            System.out.println("Usage: java SearchLoadClient <server url> <queries> [-connections <n>] [-requests <n>] [-k <n>] [-trec]");
+            System.out.println("There are no queries in " + args[1]);
+            System.exit(0);
+        }
+
+		/*
+		  Each client thread takes the next request, in turn, until they are all sent
+		*/
+        final int total = requests;
+        final long[] times = new long[total];
+        final AtomicLong next = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        Thread[] clients = new Thread[connections];
+        long start = System.nanoTime();
+        for (int which = 0; which < connections; which++) {
+            clients[which] = new Thread() {
+                public void run() {
+                    byte[] buffer = new byte[64 * 1024];
+                    int request;
+                    while ((request = (int) next.getAndIncrement()) < total) {
+                        long started = System.nanoTime();
+                        try {
+                            if (request(urls.get(request % urls.size()), buffer) != 200)
+                                errors.incrementAndGet();
+                        } catch (Exception e) {
+                            errors.incrementAndGet();
+                        }
+                        times[request] = System.nanoTime() - started;
+                    }
+                }
+            };
+            clients[which].start();
+        }
+        for (Thread client : clients)
+            client.join();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        Arrays.sort(times);
+        System.out.printf("%d requests on %d connections in %.3f seconds, %.1f requests/second, %d errors%n", total, connections, seconds, total / seconds, errors.get());
+        System.out.printf("latency ms: p50 %.3f  p90 %.3f  p99 %.3f  p99.9 %.3f  max %.3f%n", JASSjr_search.percentile(times, 50), JASSjr_search.percentile(times, 90), JASSjr_search.percentile(times, 99), JASSjr_search.percentile(times, 99.9), JASSjr_search.percentile(times, 100));
+    }
+}
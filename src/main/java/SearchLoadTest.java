@@ -0,0 +1,117 @@
+/*
+  SearchLoadTest.java
+  -------------------
+  Copyright (c) 2019 Andrew Trotman and Kat Lilly
+  Minimalistic BM25 search engine.
+*/
+
+import java.util.List;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.Future;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/*
+  CLASS SEARCHLOADTEST
+  --------------------
+  Run the queries concurrently against the index in the current directory, one engine shared by all threads, at
+  1, 2, 4, ... up to the given number of threads (and then on virtual threads if asked), check that every query gets the same
+  results as it does alone, and report the throughput at each.  For example:
+    java SearchLoadTest 51-100.titles.txt -threads 8 -rounds 20
+*/
+class SearchLoadTest {
+    /*
+      run()
+      -----
+      Run every query rounds times on the executor, return the number whose results differ from expected[]
+    */
+    static int run(final JASSjr_search engine, ExecutorService executor, List<String> queries, int rounds, JASSjr_search.Results[] expected) throws Exception {
+        List<Future<JASSjr_search.Results>> answers = new ArrayList<Future<JASSjr_search.Results>>();
+        for (int round = 0; round < rounds; round++)
+            for (final String query : queries)
+                answers.add(executor.submit(new Callable<JASSjr_search.Results>() {
+                    public JASSjr_search.Results call() throws Exception {
+                        return engine.search(query);
+                    }
+                }));
+
+        int differences = 0;
+        for (int which = 0; which < answers.size(); which++) {
+            JASSjr_search.Results got = answers.get(which).get();
+            JASSjr_search.Results wanted = expected[which % queries.size()];
+            if (!Arrays.equals(got.documents, wanted.documents) || !Arrays.equals(got.scores, wanted.scores))
+                differences++;
+        }
+        return differences;
+    }
+
+    /*
+      main()
+      ------
+    */
+    public static void main(String args[]) throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean virtual = false;
+        boolean mapped = false;
+        int rounds = 10;
+        int k = 10;
+        for (int arg = 1; arg < args.length; arg++)
+            if (args[arg].equals("-threads") && arg + 1 < args.length && args[arg + 1].matches("[1-9][0-9]*"))
+                threads = Integer.parseInt(args[++arg]);
+            else if (args[arg].equals("-virtual"))
+                virtual = true;
+            else if (args[arg].equals("-mmap"))
+                mapped = true;
+            else if (args[arg].equals("-rounds") && arg + 1 < args.length && args[arg + 1].matches("[1-9][0-9]*"))
+                rounds = Integer.parseInt(args[++arg]);
+            else if (args[arg].equals("-k") && arg + 1 < args.length && args[arg + 1].matches("[0-9]+"))
+                k = Integer.parseInt(args[++arg]);
+            else
+                args = new String[0];
+        if (args.length == 0) {
+            System.out.println("Usage: java SearchLoadTest <queries> [-threads <n>] [-virtual] [-mmap] [-rounds <n>] [-k <n>]");
+            System.exit(0);
+        }
+
+        JASSjr_search engine = new JASSjr_search();
+        engine.k = k;
+        engine.limitContexts(Math.max(threads, Runtime.getRuntime().availableProcessors()));    // the most concurrent queries
+        engine.loadIndex(mapped);
+        List<String> queries = Files.readAllLines(Paths.get(args[0]));
+
+		/*
+		  The expected results, one query at a time (which also warms up the JIT)
+		*/
+        JASSjr_search.Results[] expected = new JASSjr_search.Results[queries.size()];
+        for (int round = 0; round < 2; round++)
+            for (int query = 0; query < queries.size(); query++)
+                expected[query] = engine.search(queries.get(query));
+
+        System.out.println(queries.size() + " queries, top " + k + ", " + rounds + " rounds, " + Runtime.getRuntime().availableProcessors() + " processors");
+        double single = 0;
+        int differences = 0;
+        List<Integer> levels = new ArrayList<Integer>();
+        for (int concurrency = 1; concurrency < threads; concurrency *= 2)
+            levels.add(concurrency);
+        levels.add(threads);
+        if (virtual)
+            levels.add(0);              // a virtual thread per query
+        for (int concurrency : levels) {
+            ExecutorService executor = JASSjr_search.newExecutor(concurrency);
+            long start = System.nanoTime();
+            differences += run(engine, executor, queries, rounds, expected);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            executor.shutdown();
+
+            double qps = queries.size() * (double) rounds / seconds;
+            if (single == 0)
+                single = qps;
+            System.out.printf("%-8s %10.1f queries/second  %5.2fx%n", concurrency == 0 ? "virtual" : concurrency + "", qps, qps / single);
+        }
+        System.out.println(engine.contexts.size() + " search contexts");
+        System.out.println(differences == 0 ? "results identical" : differences + " queries with different results");
+    }
+}
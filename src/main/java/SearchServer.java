@@ -0,0 +1,217 @@
+/*
+  SearchServer.java
+  -----------------
+  Copyright (c) 2019 Andrew Trotman and Kat Lilly
+  Minimalistic BM25 search engine.
+*/
+
+import java.util.Map;
+import java.util.HashMap;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.nio.charset.StandardCharsets;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpExchange;
+
+/*
+  CLASS SEARCHSERVER
+  ------------------
+  Serve searches over HTTP (with the JDK's built in server) from an index loaded once and shared by every request:
+    GET /search?q=<query>[&k=<n>][&id=<query id>][&format=json|trec]
+  returns the top k documents (10 by default, at most the engine's k) as JSON or as TREC run lines.  The query is
+  parsed as JASSjr_search parses a line (so a leading number is the query id, unless id is given).  Connections
+  are kept alive between requests, and requests run on the given executor.  A segmented index can be watched for
+  new segments, which are searched from the next request on.
+*/
+class SearchServer implements HttpHandler {
+    static final int DEFAULT_K = 10;
+
+    volatile JASSjr_search engine;          // replaced (see watch()) when a segmented index changes
+    HttpServer server;
+    ScheduledThreadPoolExecutor watcher;
+
+    /*
+      SearchServer()
+      --------------
+      A server on the port (not yet started) running requests on the given number of threads (0 for virtual threads)
+    */
+    SearchServer(JASSjr_search engine, int port, int threads) throws IOException {
+        this.engine = engine;
+        System.setProperty("sun.net.httpserver.nodelay", "true");      // else small responses wait on delayed ACKs
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/search", this);
+        server.setExecutor(JASSjr_search.newExecutor(threads));
+    }
+
+    /*
+      start()
+      -------
+    */
+    void start() {
+        server.start();
+    }
+
+    /*
+      watch()
+      -------
+      Every so many seconds, reload the (segmented) index if it has changed.  Requests already running finish on
+      the engine they started on, and later requests use the new one, so no request waits for a reload.  The old
+      engine is closed (freeing the files of segments since merged away) once the last request on it finishes.
+    */
+    void watch(long interval) {
+        watcher = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SearchServer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        watcher.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    JASSjr_search reloaded = engine.reload();
+                    if (reloaded != null) {
+                        JASSjr_search old = engine;
+                        engine = reloaded;
+                        old.dispose();
+                        System.out.println("Reloaded generation " + reloaded.manifest.generation + ": " + reloaded.segments.size() + " segments, " + (long) reloaded.documentsInCollection + " documents");
+                    }
+                } catch (Exception e) {
+                    System.err.println("Could not reload the index (will try again): " + e);      // such as a segment merged away as it was read
+                }
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /*
+      parameters()
+      ------------
+      The parameters of a URL query string (name=value pairs separated by '&')
+    */
+    static Map<String, String> parameters(String query) throws IOException {
+        Map<String, String> parameters = new HashMap<String, String>();
+        if (query == null)
+            return parameters;
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0)
+                parameters.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"), URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+        }
+        return parameters;
+    }
+
+    /*
+      appendJsonString()
+      ------------------
+      Append the string as a JSON string (quoted and escaped)
+    */
+    static void appendJsonString(StringBuilder out, String string) {
+        out.append('"');
+        for (int at = 0; at < string.length(); at++) {
+            char c = string.charAt(at);
+            if (c == '"' || c == '\\')
+                out.append('\\').append(c);
+            else if (c < ' ')
+                out.append(String.format("\\u%04x", (int) c));
+            else
+                out.append(c);
+        }
+        out.append('"');
+    }
+
+    /*
+      json()
+      ------
+      The results as a JSON object
+    */
+    static String json(JASSjr_search engine, String query, JASSjr_search.Results results, int k, long nanoseconds) {
+        StringBuilder out = new StringBuilder(64 + k * 64);
+        out.append("{\"query\":");
+        appendJsonString(out, query);
+        out.append(",\"id\":").append(results.queryId).append(",\"results\":[");
+        for (int position = 0; position < k; position++) {
+            if (position != 0)
+                out.append(',');
+            out.append("{\"rank\":").append(position + 1).append(",\"docid\":");
+            appendJsonString(out, engine.primaryKey.get(results.documents[position]));
+            out.append(",\"score\":");
+            JASSjr_search.appendScore(out, results.scores[position]);
+            out.append('}');
+        }
+        out.append("],\"microseconds\":").append(nanoseconds / 1000).append("}\n");
+        return out.toString();
+    }
+
+    /*
+      send()
+      ------
+      Send the response (with its length, so that the connection can be kept alive)
+    */
+    static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    /*
+      handle()
+      --------
+      Answer a request for /search
+    */
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+			/*
+			  Read (and discard) any request body, the connection can't be reused until it is read
+			*/
+            InputStream in = exchange.getRequestBody();
+            byte[] discard = new byte[4096];
+            while (in.read(discard) >= 0)
+                ;
+            in.close();
+
+            Map<String, String> parameters = parameters(exchange.getRequestURI().getRawQuery());
+            String query = parameters.get("q");
+            String k = parameters.containsKey("k") ? parameters.get("k") : "" + DEFAULT_K;
+            String id = parameters.get("id");
+            String format = parameters.containsKey("format") ? parameters.get("format") : "json";
+            if (query == null || !k.matches("[0-9]{1,9}") || (id != null && !id.matches("[0-9]{1,18}")) || !(format.equals("json") || format.equals("trec"))) {
+                send(exchange, 400, "text/plain; charset=utf-8", "Usage: /search?q=<query>[&k=<n>][&id=<query id>][&format=json|trec]\n");
+                return;
+            }
+
+			/*
+			  Search on the current engine (the results are numbered in its documents), keeping it open until done
+			*/
+            JASSjr_search engine = this.engine;
+            while (!engine.retain())
+                engine = this.engine;           // it was replaced (and closed) as we took it
+            String body;
+            try {
+                long start = System.nanoTime();
+                JASSjr_search.Results results = engine.search(query, Integer.parseInt(k));
+                long nanoseconds = System.nanoTime() - start;
+                if (id != null)
+                    results.queryId = Long.parseLong(id);
+                int found = results.documents.length;
+                body = format.equals("json") ? json(engine, query, results, found, nanoseconds) : engine.trecRun(results, found);
+            } finally {
+                engine.dispose();
+            }
+            send(exchange, 200, format.equals("json") ? "application/json; charset=utf-8" : "text/plain; charset=utf-8", body);
+        } catch (Exception e) {
+            send(exchange, 500, "text/plain; charset=utf-8", e + "\n");
+        } finally {
+            exchange.close();
+        }
+    }
+}
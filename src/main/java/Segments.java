@@ -0,0 +1,468 @@
+/*
+  Segments.java
+  -------------
+  Copyright (c) 2019 Andrew Trotman and Kat Lilly
+  Minimalistic BM25 search engine.
+*/
+
+import java.io.File;
+import java.util.List;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Properties;
+import java.nio.file.Files;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.PriorityQueue;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardCopyOption;
+import java.nio.channels.OverlappingFileLockException;
+
+/*
+  CLASS SEGMENTS
+  --------------
+  A segmented index: a directory of immutable segments, each a whole index (as IndexWriter writes) of a batch of
+  documents in a directory of its own, and a manifest, segments.bin, of "name=value" lines:
+    generation=<n>          - incremented each time the manifest is published
+    postings=<format>       - the postings format of every segment (raw or vbyte, see IndexWriter)
+    segments=<name>,...     - the live segments, in collection order (the documents of each follow those of the one before)
+  A batch of documents is added by indexing it into a new segment then publishing a manifest that names it, and
+  segments are merged by writing the merged segment then publishing a manifest that names it in their place.  The
+  manifest is replaced atomically, so a search engine reading it always sees a whole index.
+  Writers only lock the manifest (write.lock) while they re-read it, change it and publish it, so batches can be
+  added while segments are merged in the background by a merger (of which there is one at a time, it holds
+  merge.lock):  neither the search engines nor the indexers wait for a merge.  A writer reserves the name of the
+  segment it is writing, segment<n>, by locking segment<n>.lock until the segment is published, so names are never
+  reused, and the directories of segments that were never published (their writer stopped part way) can be told
+  apart from those being written.
+*/
+class Segments {
+    static final String MANIFEST = "segments.bin";
+    static final String PREFIX = "segment";
+    static final int SMALLEST = 1000;       // segments of fewer documents than this are in the lowest tier
+
+    String directory;
+    long generation;
+    String postingsFormat;
+    List<String> names = new ArrayList<String>();
+    RandomAccessFile manifestLockFile;      // write.lock, while changing the manifest
+    FileLock manifestLock;
+    RandomAccessFile mergeLockFile;         // merge.lock, while merging
+    FileLock mergeLock;
+    HashMap<String, RandomAccessFile> reserved = new HashMap<String, RandomAccessFile>();     // segments being written
+
+    /*
+      Segments()
+      ----------
+    */
+    Segments(String directory) {
+        this.directory = directory;
+    }
+
+    /*
+      exists()
+      --------
+      Is there a segmented index in directory?
+    */
+    static boolean exists(String directory) {
+        return new File(directory, MANIFEST).exists();
+    }
+
+    /*
+      read()
+      ------
+      The manifest of the segmented index in directory (with no segments if there isn't one)
+    */
+    static Segments read(String directory) throws IOException {
+        Segments segments = new Segments(directory);
+        segments.refresh();
+        return segments;
+    }
+
+    /*
+      refresh()
+      ---------
+      Re-read the manifest (as another writer may have published since)
+    */
+    void refresh() throws IOException {
+        names.clear();
+        if (!exists(directory))
+            return;
+        Properties manifest = new Properties();
+        FileInputStream file = new FileInputStream(path(MANIFEST));
+        try {
+            manifest.load(file);
+        } finally {
+            file.close();
+        }
+        generation = Long.parseLong(manifest.getProperty("generation", "0"));
+        postingsFormat = manifest.getProperty("postings", IndexWriter.RAW);
+        String list = manifest.getProperty("segments", "");
+        if (list.length() != 0)
+            names.addAll(Arrays.asList(list.split(",")));
+    }
+
+    /*
+      open()
+      ------
+      Open the segmented index in directory (creating it if need be) for writing.  Directories of segments that were
+      never published, and aren't being written, are deleted.
+    */
+    static Segments open(String directory) throws IOException {
+        new File(directory).mkdirs();
+        Segments segments = new Segments(directory);
+        segments.lockManifest();
+        try {
+            segments.refresh();
+            File[] files = new File(directory).listFiles();
+            for (File file : files == null ? new File[0] : files) {
+                String name = file.getName().replace(".lock", "");
+                if (name.matches(PREFIX + "[0-9]+") && !segments.names.contains(name) && segments.isAbandoned(name)) {
+                    delete(new File(segments.path(name)));
+                    new File(segments.path(name + ".lock")).delete();
+                }
+            }
+        } finally {
+            segments.unlockManifest();
+        }
+        return segments;
+    }
+
+    /*
+      isAbandoned()
+      -------------
+      Is nobody writing the named segment (so its writer has stopped, or has finished and published it)?
+    */
+    boolean isAbandoned(String name) throws IOException {
+        if (reserved.containsKey(name))
+            return false;
+        RandomAccessFile file = new RandomAccessFile(path(name + ".lock"), "rw");
+        try {
+            return file.getChannel().tryLock() != null;
+        } catch (OverlappingFileLockException e) {
+            return false;           // this process is writing it
+        } finally {
+            file.close();
+        }
+    }
+
+    /*
+      lockManifest() and unlockManifest()
+      -----------------------------------
+      Hold the manifest (waiting for any other writer publishing) while it is re-read, changed and published
+    */
+    void lockManifest() throws IOException {
+        manifestLockFile = new RandomAccessFile(path("write.lock"), "rw");
+        manifestLock = manifestLockFile.getChannel().lock();
+    }
+
+    void unlockManifest() throws IOException {
+        manifestLock.release();
+        manifestLockFile.close();
+    }
+
+    /*
+      lockMerges()
+      ------------
+      Become the index's merger, return false if another merger already is
+    */
+    boolean lockMerges() throws IOException {
+        mergeLockFile = new RandomAccessFile(path("merge.lock"), "rw");
+        try {
+            mergeLock = mergeLockFile.getChannel().tryLock();
+        } catch (OverlappingFileLockException e) {
+            mergeLock = null;
+        }
+        if (mergeLock == null)
+            mergeLockFile.close();
+        return mergeLock != null;
+    }
+
+    /*
+      close()
+      -------
+      Stop writing (stop merging, and give up the names of any segments not published)
+    */
+    void close() throws IOException {
+        if (mergeLock != null) {
+            mergeLock.release();
+            mergeLockFile.close();
+            mergeLock = null;
+        }
+        for (RandomAccessFile file : reserved.values())
+            file.close();               // which releases its lock, the segment is deleted by the next writer
+        reserved.clear();
+    }
+
+    /*
+      path()
+      ------
+      The path of the given file (or segment) of the index
+    */
+    String path(String filename) {
+        return new File(directory, filename).getPath();
+    }
+
+    /*
+      reserve()
+      ---------
+      Reserve the name of a new segment (one more than any segment there has been), and make its directory
+    */
+    String reserve() throws IOException {
+        lockManifest();
+        try {
+            long number = 0;
+            File[] files = new File(directory).listFiles();
+            for (File file : files == null ? new File[0] : files) {
+                String name = file.getName().replace(".lock", "");
+                if (name.matches(PREFIX + "[0-9]+"))
+                    number = Math.max(number, number(name));
+            }
+            refresh();
+            for (String name : names)
+                number = Math.max(number, number(name));
+
+            String name = PREFIX + (number + 1);
+            RandomAccessFile file = new RandomAccessFile(path(name + ".lock"), "rw");
+            file.getChannel().lock();
+            reserved.put(name, file);
+            new File(path(name)).mkdirs();
+            return name;
+        } finally {
+            unlockManifest();
+        }
+    }
+
+    /*
+      release()
+      ---------
+      Give up the name of a segment that has been published (or deleted)
+    */
+    void release(String name) throws IOException {
+        RandomAccessFile file = reserved.remove(name);
+        if (file != null) {
+            file.close();
+            new File(path(name + ".lock")).delete();
+        }
+    }
+
+    /*
+      number()
+      --------
+      The number of the named segment
+    */
+    static long number(String name) {
+        return Long.parseLong(name.substring(PREFIX.length()));
+    }
+
+    /*
+      documents()
+      -----------
+      The number of documents in the named segment
+    */
+    long documents(String name) {
+        return new File(path(name), "lengths.bin").length() / 4;
+    }
+
+    /*
+      publish()
+      ---------
+      Write the manifest as the next generation, replacing the last in one step (with the manifest locked)
+    */
+    void publish() throws IOException {
+        generation++;
+        StringBuilder list = new StringBuilder();
+        for (String name : names)
+            list.append(list.length() == 0 ? "" : ",").append(name);
+        File temporary = new File(path(MANIFEST + ".tmp"));
+        FileOutputStream file = new FileOutputStream(temporary);
+        try {
+            file.write(("generation=" + generation + "\npostings=" + postingsFormat + "\nsegments=" + list + "\n").getBytes());
+            file.getFD().sync();
+        } finally {
+            file.close();
+        }
+        Files.move(temporary.toPath(), new File(path(MANIFEST)).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /*
+      add()
+      -----
+      Publish the named segment (reserved, and written, with the given postings format) at the end of the collection,
+      return false (publishing nothing) if the index has segments of another postings format
+    */
+    boolean add(String name, String format) throws IOException {
+        lockManifest();
+        try {
+            refresh();
+            if (!names.isEmpty() && !postingsFormat.equals(format))
+                return false;
+            postingsFormat = format;
+            names.add(name);
+            publish();
+        } finally {
+            unlockManifest();
+        }
+        release(name);
+        return true;
+    }
+
+    /*
+      tier()
+      ------
+      The tier of a segment of the given number of documents:  those of fewer than SMALLEST * mergeFactor documents
+      are tier 0, then each tier holds segments mergeFactor times larger than the one below.  Counted in integers, as
+      the ratio of logarithms can round an exact power of mergeFactor down into the tier below.
+    */
+    static int tier(long documents, int mergeFactor) {
+        long size = Math.max(documents, SMALLEST) / SMALLEST;
+        int tier = 0;
+        while (size >= mergeFactor) {
+            size /= mergeFactor;
+            tier++;
+        }
+        return tier;
+    }
+
+    /*
+      findMerge()
+      -----------
+      The tiered merge policy:  return the first of the first mergeFactor consecutive segments in the same tier, or -1
+      if there aren't any.  Only consecutive segments are merged so the documents stay in collection order (and so
+      the results of a search are the same however the segments have been merged).
+    */
+    int findMerge(int mergeFactor) {
+        int run = 0;
+        for (int which = 0; which < names.size(); which++) {
+            int tier = tier(documents(names.get(which)), mergeFactor);
+            run = which > 0 && tier == tier(documents(names.get(which - 1)), mergeFactor) ? run + 1 : 1;
+            if (run == mergeFactor)
+                return which - mergeFactor + 1;
+        }
+        return -1;
+    }
+
+    /*
+      mergeTiers()
+      ------------
+      Merge segments as the tiered merge policy says until it says to stop (looking again at the manifest after each
+      merge, for batches added meanwhile), return the number of merges.  Each merge is published as it is made, and
+      search engines go on searching the segments being merged until it is.
+    */
+    int mergeTiers(int mergeFactor) throws Exception {
+        int merges = 0;
+        refresh();
+        for (int from = findMerge(mergeFactor); from >= 0; from = findMerge(mergeFactor)) {
+            merge(new ArrayList<String>(names.subList(from, from + mergeFactor)));
+            merges++;
+            refresh();
+        }
+        return merges;
+    }
+
+    /*
+      merge()
+      -------
+      Merge the given consecutive segments into one new segment and publish it in their place, then delete them.
+      The vocabularies are k-way merged, and the postings lists of a term are concatenated in segment order with the
+      document numbers of each segment shifted up by the documents in the segments before it.  Batches may be added
+      while the merge is written, it only holds the manifest to publish it.
+    */
+    void merge(List<String> merging) throws Exception {
+        String name = reserve();
+        IndexWriter writer = new IndexWriter(postingsFormat, path(name));
+
+		/*
+		  Open the segments, and write their primary keys and lengths
+		*/
+        final IndexReader[] sources = new IndexReader[merging.size()];
+        int[] base = new int[sources.length];
+        int documents = 0;
+        try {
+            for (int which = 0; which < sources.length; which++) {
+                sources[which] = new IndexReader(path(merging.get(which)));
+                writer.addPrimaryKeys(sources[which].primaryKeys);
+                writer.addLengths(sources[which].lengths, sources[which].lengths.length);
+                base[which] = documents;
+                documents += sources[which].lengths.length;
+            }
+
+			/*
+			  Merge the vocabularies, next[which] is the next term of segment which
+			*/
+            final int[] next = new int[sources.length];
+            PriorityQueue<Integer> heap = new PriorityQueue<Integer>(sources.length, new Comparator<Integer>() {
+                public int compare(Integer a, Integer b) {
+                    int cmp = IndexWriter.TERM_ORDER.compare(sources[a].terms.get(next[a]).term, sources[b].terms.get(next[b]).term);
+                    return cmp != 0 ? cmp : a - b;
+                }
+            });
+            for (int which = 0; which < sources.length; which++)
+                if (!sources[which].terms.isEmpty())
+                    heap.add(which);
+
+            int[] postings = new int[1024];
+            while (!heap.isEmpty()) {
+                String term = sources[heap.peek()].terms.get(next[heap.peek()]).term;
+                int size = 0;
+                while (!heap.isEmpty() && sources[heap.peek()].terms.get(next[heap.peek()]).term.equals(term)) {
+                    int which = heap.poll();
+                    int[] list = sources[which].decodePostings(sources[which].terms.get(next[which]));
+                    if (postings.length < size * 2 + list.length)
+                        postings = Arrays.copyOf(postings, (size * 2 + list.length) * 2);
+                    for (int at = 0; at < list.length; at += 2) {
+                        postings[size * 2 + at] = list[at] + base[which];
+                        postings[size * 2 + at + 1] = list[at + 1];
+                    }
+                    size += list.length / 2;
+                    if (++next[which] < sources[which].terms.size())
+                        heap.add(which);
+                }
+                writer.addTerm(term, postings, size);
+            }
+            writer.close();
+        } finally {
+            for (IndexReader source : sources)
+                if (source != null)
+                    source.close();         // before the segments are deleted
+        }
+
+		/*
+		  Publish the merged segment in place of those merged (batches added meanwhile stay after it), then delete them
+		  (search engines still searching them keep the files they have open, or mapped, until they are done)
+		*/
+        lockManifest();
+        try {
+            refresh();
+            int from = names.indexOf(merging.get(0));
+            if (from < 0 || from + merging.size() > names.size() || !names.subList(from, from + merging.size()).equals(merging))
+                throw new IOException("The segments " + merging + " were changed by another writer");
+            names.subList(from, from + merging.size()).clear();
+            names.add(from, name);
+            publish();
+        } finally {
+            unlockManifest();
+        }
+        release(name);
+        for (String segment : merging)
+            delete(new File(path(segment)));
+        System.out.println("Merged " + merging + " into " + name + " (" + documents + " documents)");
+    }
+
+    /*
+      delete()
+      --------
+      Delete the file (or the directory and everything in it)
+    */
+    static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null)
+            for (File inside : files)
+                delete(inside);
+        file.delete();
+    }
+}
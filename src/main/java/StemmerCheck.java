@@ -0,0 +1,114 @@
+/*
+  StemmerCheck.java
+  -----------------
+  Copyright (c) 2019 Andrew Trotman and Kat Lilly
+  Minimalistic BM25 search engine.
+*/
+
+import java.util.List;
+import java.util.Locale;
+import java.util.ArrayList;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.StringTokenizer;
+
+/*
+  CLASS STEMMERCHECK
+  ------------------
+  Check both Porter stemmers (PorterStemmer and InPlacePorterStemmer) against the expected stems of a fixed sample
+  of words (porter-stems.txt, "word stem" lines:  a sample of the vocabulary of travel.xml and the examples of
+  Porter's paper), failing (exit status 1) if either gives a different stem.  Given a word list (one or more words
+  per line) as well, also check that the two stemmers agree on every word of it and compare their throughput.  Run
+  from this directory:
+    java StemmerCheck porter-stems.txt [<wordlist>]
+*/
+class StemmerCheck {
+    /*
+      check()
+      -------
+      Stem each word with both stemmers, print (the first 20 of) those whose stems differ from expected[] (or, if it
+      is null, from each other), return the number that differ
+    */
+    static int check(List<String> words, List<String> expected) {
+        PorterStemmer reference = new PorterStemmer();
+        InPlacePorterStemmer stemmer = new InPlacePorterStemmer();
+        int differences = 0;
+        for (int which = 0; which < words.size(); which++) {
+            String word = words.get(which);
+            String stem = reference.stemWord(word);
+            String inPlace = stemmer.stemWord(word);
+            String wanted = expected == null ? stem : expected.get(which);
+            if (!stem.equals(wanted) || !inPlace.equals(wanted))
+                if (differences++ < 20)
+                    System.out.println(word + ": expected " + wanted + ", PorterStemmer " + stem + ", InPlacePorterStemmer " + inPlace);
+        }
+        return differences;
+    }
+
+    /*
+      throughput()
+      ------------
+      Time both stemmers over the words, ten times
+    */
+    static void throughput(List<String> words) {
+        PorterStemmer reference = new PorterStemmer();
+        InPlacePorterStemmer stemmer = new InPlacePorterStemmer();
+        char[] buffer = new char[256];
+        for (int round = 0; round < 10; round++) {
+            long start = System.nanoTime();
+            long checksum = 0;
+            for (String word : words)
+                checksum += reference.stemWord(word).length();
+            long middle = System.nanoTime();
+            for (String word : words) {
+                int length = Math.min(word.length(), buffer.length);
+                word.getChars(0, length, buffer, 0);
+                checksum -= stemmer.stem(buffer, length);
+            }
+            long end = System.nanoTime();
+            System.out.printf("PorterStemmer %.0f words/s, InPlacePorterStemmer %.0f words/s (%d)%n", words.size() * 1e9 / (middle - start), words.size() * 1e9 / (end - middle), checksum);
+        }
+    }
+
+    /*
+      main()
+      ------
+    */
+    public static void main(String args[]) throws Exception {
+        if (args.length < 1 || args.length > 2) {
+            System.out.println("Usage: java StemmerCheck <stems> [<wordlist>]");
+            System.exit(0);
+        }
+
+		/*
+		  The sample, and its expected stems
+		*/
+        List<String> words = new ArrayList<String>();
+        List<String> expected = new ArrayList<String>();
+        for (String line : Files.readAllLines(Paths.get(args[0]))) {
+            StringTokenizer fields = new StringTokenizer(line);
+            if (fields.countTokens() != 2)
+                continue;
+            words.add(fields.nextToken());
+            expected.add(fields.nextToken());
+        }
+        int differences = check(words, expected);
+        System.out.println(words.size() + " words in " + args[0] + ", " + differences + " differences");
+
+		/*
+		  The word list:  the stemmers must agree, and how fast is each?
+		*/
+        if (args.length == 2) {
+            List<String> list = new ArrayList<String>();
+            for (String line : Files.readAllLines(Paths.get(args[1])))
+                for (String word : line.trim().split("\\s+"))
+                    if (word.length() != 0)
+                        list.add(word.toLowerCase(Locale.ROOT));
+            int disagreements = check(list, null);
+            System.out.println(list.size() + " words in " + args[1] + ", " + disagreements + " differences");
+            differences += disagreements;
+            throughput(list);
+        }
+        System.exit(differences == 0 ? 0 : 1);
+    }
+}
@@ -1,15 +1,16 @@
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.List;
+import java.util.HashSet;
 import java.util.Locale;
+import java.util.Set;
 
 public class StopWord {
 
-    private List<String> stopWordsList;
+    private Set<String> stopWordsList;
 
     public StopWord(String stopwordsFile) throws IOException {
-        stopWordsList = Files.readAllLines(Paths.get(stopwordsFile));
+        stopWordsList = new HashSet<>(Files.readAllLines(Paths.get(stopwordsFile)));
     }
 
     public boolean isStopWord(String token) {
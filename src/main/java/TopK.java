@@ -0,0 +1,147 @@
+/*
+  TopK.java
+  ---------
+  Copyright (c) 2019 Andrew Trotman and Kat Lilly
+  Minimalistic BM25 search engine.
+*/
+
+/*
+  CLASS TOPK
+  ----------
+  Select the k documents with the highest rsv using a min-heap of document ids, so that a query costs one pass
+  over the accumulators and O(log k) per candidate rather than sorting the whole collection.  Documents are ordered
+  the way the search engine has always sorted them: by decreasing rsv, ties broken on the higher document ID first.
+  Documents with an rsv of 0 (or less) are not results.
+*/
+class TopK {
+    int k;              // the number of documents to keep
+    int[] heap;         // heap[0] .. heap[size - 1] are the document ids, heap[0] is the worst of them
+    int size;
+    Accumulators rsv;   // the accumulators being selected from
+
+    /*
+      TopK()
+      ------
+    */
+    TopK(int k) {
+        this.k = k;
+        heap = new int[k];
+    }
+
+    /*
+      worse()
+      -------
+      Does document a rank below document b?
+    */
+    boolean worse(int a, int b) {
+        double rsvA = rsv.value(a);
+        double rsvB = rsv.value(b);
+        return rsvA < rsvB || (rsvA == rsvB && a < b);
+    }
+
+    /*
+      siftDown()
+      ----------
+      Move the document at position at down the heap of size documents until it is no worse than its children
+    */
+    void siftDown(int at, int size) {
+        int document = heap[at];
+        while (true) {
+            int child = 2 * at + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && worse(heap[child + 1], heap[child]))
+                child++;
+            if (!worse(heap[child], document))
+                break;
+            heap[at] = heap[child];
+            at = child;
+        }
+        heap[at] = document;
+    }
+
+    /*
+      add()
+      -----
+      Offer document d as a result
+    */
+    void add(int d) {
+        if (size < k) {
+            int at = size++;
+            while (at > 0) {
+                int parent = (at - 1) / 2;
+                if (!worse(d, heap[parent]))
+                    break;
+                heap[at] = heap[parent];
+                at = parent;
+            }
+            heap[at] = d;
+        } else if (k > 0 && worse(heap[0], d)) {
+            heap[0] = d;
+            siftDown(0, size);
+        }
+    }
+
+    /*
+      reset()
+      -------
+      Start a new selection from the accumulators rsv, documents are then offered with add()
+    */
+    void reset(Accumulators rsv) {
+        this.rsv = rsv;
+        size = 0;
+    }
+
+    /*
+      full()
+      ------
+      Have k documents been found?  If so then a document must rank above heap[0] to be added.
+    */
+    boolean full() {
+        return size == k && k > 0;
+    }
+
+    /*
+      sort()
+      ------
+      Sort the documents found so far into rank order, return the number of them (see results()).  Heapsort:
+      repeatedly move the worst remaining document to the end.
+    */
+    int sort() {
+        for (int last = size - 1; last > 0; last--) {
+            int worst = heap[0];
+            heap[0] = heap[last];
+            heap[last] = worst;
+            siftDown(0, last);
+        }
+        return size;
+    }
+
+    /*
+      select()
+      --------
+      Find the top k of the documents with an rsv.  Only the pages of accumulators written to since they were
+      cleared can hold one.  On return results[0] .. results[size - 1] are the document ids in rank order, and the
+      number of them is returned.
+    */
+    int select(Accumulators rsv) {
+        reset(rsv);
+        for (int page = 0; page < rsv.dirtyCount; page++) {
+            int from = rsv.dirtyPages[page] << rsv.shift;
+            int to = Math.min(rsv.documents, from + (1 << rsv.shift));
+            for (int d = from; d < to; d++)
+                if (rsv.value(d) > 0)
+                    add(d);
+        }
+        return sort();
+    }
+
+    /*
+      results()
+      ---------
+      The document ids found by select() (or sort()), best first
+    */
+    int[] results() {
+        return heap;
+    }
+}
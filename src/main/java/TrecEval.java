@@ -0,0 +1,199 @@
+/*
+  TrecEval.java
+  -------------
+  Copyright (c) 2019 Andrew Trotman and Kat Lilly
+  Minimalistic BM25 search engine.
+*/
+
+import java.util.Map;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.StringTokenizer;
+
+/*
+  CLASS TRECEVAL
+  --------------
+  The trec_eval measures used to evaluate JASSjr:  mean average precision, precision at 10, and nDCG (with the
+  relevance level as the gain, over the whole ranking), computed as trec_eval computes them.  As trec_eval does
+  (without -c), the means are over the topics in the run that have judgements (others are skipped), documents are
+  ranked on their score in the run (ties to the higher document id, as strings) rather than their rank, and a
+  document is relevant if its judgement is greater than zero.  For example:
+    java TrecEval 51-100.qrels.txt run.txt
+*/
+class TrecEval {
+    /*
+      CLASS RANKED
+      ------------
+      A document in the run
+    */
+    static class Ranked {
+        String document;
+        double score;
+
+        Ranked(String document, double score) {
+            this.document = document;
+            this.score = score;
+        }
+    }
+
+    /*
+      CLASS MEASURES
+      --------------
+    */
+    static class Measures {
+        int topics;                 // topics in the run (with judgements)
+        long retrieved;
+        long judgedRetrieved;       // retrieved documents with a judgement (relevant or not)
+        long relevant;              // judged relevant (for the topics in the run)
+        long relevantRetrieved;
+        double map;
+        double p10;
+        double ndcg;
+    }
+
+    Map<String, Map<String, Integer>> judgements = new HashMap<String, Map<String, Integer>>();    // topic -> document -> relevance
+
+    /*
+      TrecEval()
+      ----------
+      Read the relevance judgements (qrels:  topic iteration document relevance)
+    */
+    TrecEval(String qrelsFile) throws Exception {
+        for (String line : Files.readAllLines(Paths.get(qrelsFile))) {
+            StringTokenizer fields = new StringTokenizer(line);
+            if (fields.countTokens() < 4)
+                continue;
+            String topic = fields.nextToken();
+            fields.nextToken();
+            String document = fields.nextToken();
+            int relevance = Integer.parseInt(fields.nextToken());
+            Map<String, Integer> topicJudgements = judgements.get(topic);
+            if (topicJudgements == null)
+                judgements.put(topic, topicJudgements = new HashMap<String, Integer>());
+            topicJudgements.put(document, relevance);
+        }
+    }
+
+    /*
+      readRun()
+      ---------
+      The documents of each topic in a TREC run (topic Q0 document rank score run-name), in trec_eval's order
+    */
+    static Map<String, List<Ranked>> readRun(List<String> lines) {
+        Map<String, List<Ranked>> run = new TreeMap<String, List<Ranked>>();
+        for (String line : lines) {
+            StringTokenizer fields = new StringTokenizer(line);
+            if (fields.countTokens() < 6)
+                continue;
+            String topic = fields.nextToken();
+            fields.nextToken();
+            String document = fields.nextToken();
+            fields.nextToken();
+            double score = Double.parseDouble(fields.nextToken());
+            List<Ranked> ranking = run.get(topic);
+            if (ranking == null)
+                run.put(topic, ranking = new ArrayList<Ranked>());
+            ranking.add(new Ranked(document, score));
+        }
+        for (List<Ranked> ranking : run.values())
+            Collections.sort(ranking, new Comparator<Ranked>() {
+                public int compare(Ranked a, Ranked b) {
+                    if (a.score != b.score)
+                        return a.score > b.score ? -1 : 1;
+                    return b.document.compareTo(a.document);
+                }
+            });
+        return run;
+    }
+
+    /*
+      evaluate()
+      ----------
+      The measures of the run (the lines of a run file)
+    */
+    Measures evaluate(List<String> lines) {
+        Measures measures = new Measures();
+        for (Map.Entry<String, List<Ranked>> topic : readRun(lines).entrySet()) {
+            Map<String, Integer> topicJudgements = judgements.get(topic.getKey());
+            if (topicJudgements == null)
+                continue;               // as trec_eval does
+            List<Ranked> ranking = topic.getValue();
+
+			/*
+			  The ideal ranking (for nDCG) and the number of relevant documents
+			*/
+            List<Integer> gains = new ArrayList<Integer>();
+            for (int relevance : topicJudgements.values())
+                if (relevance > 0)
+                    gains.add(relevance);
+            Collections.sort(gains, Collections.reverseOrder());
+            double idealDcg = 0;
+            for (int rank = 0; rank < gains.size(); rank++)
+                idealDcg += gains.get(rank) / log2(rank + 2);
+
+            double precisions = 0;
+            double dcg = 0;
+            int found = 0;
+            int foundInTop10 = 0;
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                Integer relevance = topicJudgements.get(ranking.get(rank).document);
+                if (relevance != null)
+                    measures.judgedRetrieved++;
+                if (relevance == null || relevance <= 0)
+                    continue;
+                found++;
+                if (rank < 10)
+                    foundInTop10++;
+                precisions += found / (rank + 1.0);
+                dcg += relevance / log2(rank + 2);
+            }
+
+            measures.topics++;
+            measures.retrieved += ranking.size();
+            measures.relevant += gains.size();
+            measures.relevantRetrieved += found;
+            measures.map += gains.isEmpty() ? 0 : precisions / gains.size();
+            measures.p10 += foundInTop10 / 10.0;
+            measures.ndcg += idealDcg == 0 ? 0 : dcg / idealDcg;
+        }
+        if (measures.topics != 0) {
+            measures.map /= measures.topics;
+            measures.p10 /= measures.topics;
+            measures.ndcg /= measures.topics;
+        }
+        return measures;
+    }
+
+    /*
+      log2()
+      ------
+    */
+    static double log2(double x) {
+        return Math.log(x) / Math.log(2);
+    }
+
+    /*
+      main()
+      ------
+    */
+    public static void main(String args[]) throws Exception {
+        if (args.length != 2) {
+            System.out.println("Usage: java TrecEval <qrels> <run>");
+            System.exit(0);
+        }
+        Measures measures = new TrecEval(args[0]).evaluate(Files.readAllLines(Paths.get(args[1])));
+        System.out.printf("num_q                 \tall\t%d%n", measures.topics);
+        System.out.printf("num_ret               \tall\t%d%n", measures.retrieved);
+        System.out.printf("num_rel               \tall\t%d%n", measures.relevant);
+        System.out.printf("num_rel_ret           \tall\t%d%n", measures.relevantRetrieved);
+        System.out.printf("map                   \tall\t%.4f%n", measures.map);
+        System.out.printf("P_10                  \tall\t%.4f%n", measures.p10);
+        System.out.printf("ndcg                  \tall\t%.4f%n", measures.ndcg);
+    }
+}
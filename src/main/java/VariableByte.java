@@ -0,0 +1,66 @@
+/*
+  VariableByte.java
+  -----------------
+  Copyright (c) 2019 Andrew Trotman and Kat Lilly
+  Minimalistic BM25 search engine.
+*/
+
+/*
+  CLASS VARIABLEBYTE
+  ------------------
+  Variable-byte encoding of integers, 7 bits per byte, low-order bits first, with the high bit set on all but the
+  last byte of an integer.  Postings lists are stored as <d-gap,tf> pairs where the first d-gap is from -1 (so
+  every gap is at least 1).
+*/
+class VariableByte {
+    /*
+      encode()
+      --------
+      Encode value into into[] at position at, return the position after the encoding (at most 5 bytes are used).
+    */
+    static int encode(byte[] into, int at, int value) {
+        while ((value & ~0x7F) != 0) {
+            into[at++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        into[at++] = (byte) value;
+        return at;
+    }
+
+    /*
+      encodePostings()
+      ----------------
+      Encode size <d,tf> pairs from postings[] as <d-gap,tf> pairs into into[] (which must be at least size * 10
+      bytes long) at position at.  Return the position after the encoding.
+    */
+    static int encodePostings(byte[] into, int at, int[] postings, int size) {
+        int previous = -1;
+        for (int which = 0; which < size * 2; which += 2) {
+            at = encode(into, at, postings[which] - previous);
+            at = encode(into, at, postings[which + 1]);
+            previous = postings[which];
+        }
+        return at;
+    }
+
+    /*
+      decodePostings()
+      ----------------
+      Decode size <d-gap,tf> pairs from from[] at position at into into[] as <d,tf> pairs.  Return the position
+      after the last byte decoded.
+    */
+    static int decodePostings(byte[] from, int at, int[] into, int size) {
+        int d = -1;
+        for (int out = 0; out < size * 2; out++) {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte current = from[at++];
+                value |= (current & 0x7F) << shift;
+                if (current >= 0)
+                    break;
+            }
+            into[out] = (out & 1) == 0 ? (d += value) : value;
+        }
+        return at;
+    }
+}